@@ -3,19 +3,85 @@ package com.example.stockmarket.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
 
 @Configuration
 public class AlphaVantageConfig {
     @Value("${alphavantage.api.key}")
     private String apiKey;
 
+    @Value("${alphavantage.base-url:https://www.alphavantage.co/query}")
+    private String baseUrl;
+
+    @Value("${alphavantage.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMillis;
+
+    @Value("${alphavantage.http.read-timeout-ms:30000}")
+    private long readTimeoutMillis;
+
+    @Value("${alphavantage.rate-limit.requests-per-minute:5}")
+    private double requestsPerMinute;
+
+    @Value("${alphavantage.rate-limit.burst:5}")
+    private int burst;
+
+    @Value("${alphavantage.rate-limit.initial-backoff-ms:15000}")
+    private long initialBackoffMillis;
+
+    @Value("${alphavantage.rate-limit.max-backoff-ms:300000}")
+    private long maxBackoffMillis;
+
+    @Value("${alphavantage.rate-limit.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${alphavantage.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
     public String getApiKey() {
         return apiKey;
     }
 
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public double getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /** Shared client for all market-data calls; keeps connections alive and negotiates HTTP/2. */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpClient marketDataHttpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
     }
 }
@@ -0,0 +1,30 @@
+package com.example.stockmarket.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExportConfig {
+    @Value("${stockmarket.export.excel.row-window:100}")
+    private int excelRowWindow;
+
+    @Value("${stockmarket.export.excel.compress-temp-files:true}")
+    private boolean excelCompressTempFiles;
+
+    @Value("${stockmarket.export.pdf.max-main-memory-bytes:4194304}")
+    private long pdfMaxMainMemoryBytes;
+
+    /** Rows a streamed sheet keeps in memory; older rows are flushed to a temp file. */
+    public int getExcelRowWindow() {
+        return excelRowWindow;
+    }
+
+    public boolean isExcelCompressTempFiles() {
+        return excelCompressTempFiles;
+    }
+
+    /** Heap a streamed PDF may use for page content before spilling to a scratch file. */
+    public long getPdfMaxMainMemoryBytes() {
+        return pdfMaxMainMemoryBytes;
+    }
+}
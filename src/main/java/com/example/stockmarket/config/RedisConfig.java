@@ -1,9 +1,11 @@
 package com.example.stockmarket.config;
 
+import com.example.stockmarket.service.IndicatorState;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -21,4 +23,20 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer()); // Use StringRedisSerializer for keys
         return template;
     }
+
+    @Bean
+    public RedisTemplate<String, IndicatorState> indicatorStateRedisTemplate() {
+        RedisTemplate<String, IndicatorState> template = new RedisTemplate<>();
+        template.setConnectionFactory(jedisConnectionFactory());
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer()); // Hash fields are parameter keys
+        return template;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(jedisConnectionFactory());
+        return container;
+    }
 }
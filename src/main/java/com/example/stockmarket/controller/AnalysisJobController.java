@@ -0,0 +1,58 @@
+package com.example.stockmarket.controller;
+
+import com.example.stockmarket.model.AnalysisJobDTO;
+import com.example.stockmarket.model.AnalysisJobResultsDTO;
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.service.AnalysisJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/jobs")
+@Tag(name = "Analysis Jobs", description = "Background analysis of large symbol lists with progress polling and paged results.")
+public class AnalysisJobController {
+    private final AnalysisJobService analysisJobService;
+
+    public AnalysisJobController(AnalysisJobService analysisJobService) {
+        this.analysisJobService = analysisJobService;
+    }
+
+    @Operation(summary = "Submit an analysis job", description = "Queues the same analysis as POST /api/stocks/analyze and returns the job right away. Poll the job for progress and page through its results once symbols complete.")
+    @PostMapping
+    public ResponseEntity<AnalysisJobDTO> submitJob(@RequestBody AnalyticsRequest request) {
+        try {
+            AnalysisJobDTO job = analysisJobService.submit(request);
+            return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "60").build();
+        }
+    }
+
+    @Operation(summary = "Get an analysis job", description = "Returns the job status and how many symbols are done and failed so far.")
+    @GetMapping("/{id}")
+    public ResponseEntity<AnalysisJobDTO> getJob(@PathVariable Long id) {
+        return analysisJobService.getJob(id).map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Get analysis job results", description = "Returns a page of completed symbols in request order; available while the job is still running.")
+    @GetMapping("/{id}/results")
+    public ResponseEntity<AnalysisJobResultsDTO> getResults(@PathVariable Long id,
+                                                            @RequestParam(defaultValue = "0") int page,
+                                                            @RequestParam(defaultValue = "100") int size) {
+        return analysisJobService.getResults(id, page, size).map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Retry an analysis job", description = "Requeues a finished job; symbols that failed are analyzed again, completed ones are kept.")
+    @PostMapping("/{id}/retry")
+    public ResponseEntity<AnalysisJobDTO> retryJob(@PathVariable Long id) {
+        return analysisJobService.retry(id).map(job -> ResponseEntity.accepted().body(job)).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -1,13 +1,19 @@
 package com.example.stockmarket.controller;
 
 import com.example.stockmarket.model.AddStockRequest;
+import com.example.stockmarket.model.BulkImportResultDTO;
 import com.example.stockmarket.model.Portfolio;
 import com.example.stockmarket.model.PortfolioAnalyticsDTO;
+import com.example.stockmarket.model.PortfolioPageDTO;
 import com.example.stockmarket.model.PortfolioStock;
 import com.example.stockmarket.service.PortfolioService;
+import com.example.stockmarket.util.CsvImportUtil;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,12 +33,19 @@ public class PortfolioController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Portfolio>> getPortfoliosByOwner(@RequestParam(required = false) String owner) {
-        if (owner != null && !owner.isEmpty()) {
-            return ResponseEntity.ok(portfolioService.getPortfoliosByOwner(owner));
-        } else {
-            return ResponseEntity.ok(portfolioService.getAllPortfolios());
-        }
+    public ResponseEntity<PortfolioPageDTO> getPortfoliosByOwner(
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "false") boolean includeStocks) {
+        return ResponseEntity.ok(portfolioService.listPortfolios(owner, after, limit, includeStocks));
+    }
+
+    @GetMapping("/analytics")
+    public ResponseEntity<List<PortfolioAnalyticsDTO>> getOwnerAnalytics(
+            @RequestParam String owner,
+            @RequestParam(defaultValue = "false") boolean allocations) {
+        return ResponseEntity.ok(portfolioService.getOwnerAnalytics(owner, allocations));
     }
 
     @GetMapping("/{id}")
@@ -56,6 +69,30 @@ public class PortfolioController {
         return ResponseEntity.ok(stock);
     }
 
+    @PostMapping(value = "/{portfolioId}/stocks/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkImportResultDTO> importStocks(
+            @PathVariable Long portfolioId,
+            @RequestBody List<AddStockRequest> positions) {
+        try {
+            return ResponseEntity.ok(portfolioService.importPositions(portfolioId, positions));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping(value = "/{portfolioId}/stocks/bulk", consumes = "text/csv")
+    public ResponseEntity<BulkImportResultDTO> importStocksCsv(@PathVariable Long portfolioId, Reader body) throws IOException {
+        List<AddStockRequest> positions;
+        try {
+            positions = CsvImportUtil.readPositions(body);
+        } catch (IllegalArgumentException e) {
+            BulkImportResultDTO result = new BulkImportResultDTO();
+            result.setErrors(List.of(e.getMessage()));
+            return ResponseEntity.badRequest().body(result);
+        }
+        return importStocks(portfolioId, positions);
+    }
+
     @DeleteMapping("/stocks/{portfolioStockId}")
     public ResponseEntity<Void> removeStockFromPortfolio(@PathVariable Long portfolioStockId) {
         portfolioService.removeStockFromPortfolio(portfolioStockId);
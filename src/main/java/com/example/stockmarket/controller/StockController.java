@@ -1,15 +1,33 @@
 package com.example.stockmarket.controller;
 
+import com.example.stockmarket.config.ExportConfig;
 import com.example.stockmarket.model.StockData;
 import com.example.stockmarket.service.DataAggregatorService;
+import com.example.stockmarket.service.PriceStreamService;
+import com.example.stockmarket.service.ReportCache;
+import com.example.stockmarket.service.StockService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import com.example.stockmarket.util.ExcelExportUtil;
 import com.example.stockmarket.util.CsvExportUtil;
+import com.example.stockmarket.util.PdfExportUtil;
 import com.example.stockmarket.model.AnalyticsRequest;
 import io.swagger.v3.oas.annotations.Operation;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 @Tag(name = "Stock Analysis", description = "Endpoints for analyzing and exporting stock market data with custom analytics periods.")
@@ -17,9 +35,18 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @RequestMapping("/api/stocks")
 public class StockController {
     private final DataAggregatorService aggregatorService;
+    private final StockService stockService;
+    private final PriceStreamService priceStreamService;
+    private final ExportConfig exportConfig;
+    private final ReportCache reportCache;
 
-    public StockController(DataAggregatorService aggregatorService) {
+    public StockController(DataAggregatorService aggregatorService, StockService stockService, PriceStreamService priceStreamService,
+                           ExportConfig exportConfig, ReportCache reportCache) {
         this.aggregatorService = aggregatorService;
+        this.stockService = stockService;
+        this.priceStreamService = priceStreamService;
+        this.exportConfig = exportConfig;
+        this.reportCache = reportCache;
     }
 
     @Operation(summary = "Analyze stocks and return analytics as JSON", description = "Fetches stock data for the given symbols and returns analytics (moving average, volatility, simulated strategy) using custom periods and optional date range.")
@@ -46,56 +73,130 @@ public class StockController {
         }
     }
 
-    @Operation(summary = "Export stock analytics as CSV", description = "Fetches stock data and analytics for the given symbols and returns the result as a downloadable CSV file. Custom periods and optional date range can be specified.")
+    @Operation(summary = "Export stock analytics as CSV", description = "Fetches stock data and analytics for the given symbols and returns the result as a downloadable CSV file. Custom periods and optional date range can be specified. With stream=true each symbol is written as soon as its analysis completes; format=long (always streamed) writes one row per symbol and date with that date's close and indicator values. Reports are cached per request and data version; send the returned ETag in If-None-Match to get a 304 when nothing changed.")
     @PostMapping(value = "/analyze/csv", produces = "text/csv")
-    public void analyzeStocksCsv(@RequestBody AnalyticsRequest request, HttpServletResponse response) throws java.io.IOException {
-        Map<String, StockData> result = (request.getStartDate() != null && request.getEndDate() != null)
-            ? aggregatorService.fetchAndAggregateWithDateRange(
-                request.getSymbols(),
-                request.getMovingAveragePeriod(),
-                request.getVolatilityPeriod(),
-                request.getShortMAPeriod(),
-                request.getLongMAPeriod(),
-                request.getStartDate(),
-                request.getEndDate())
-            : aggregatorService.fetchAndAggregate(
-                request.getSymbols(),
-                request.getMovingAveragePeriod(),
-                request.getVolatilityPeriod(),
-                request.getShortMAPeriod(),
-                request.getLongMAPeriod());
-        response.setContentType("text/csv");
-        response.setHeader("Content-Disposition", "attachment; filename=stock-analysis.csv");
-        CsvExportUtil.writeStockDataToCsv(result, response.getWriter());
+    public void analyzeStocksCsv(@RequestBody AnalyticsRequest request,
+                                 @RequestParam(defaultValue = "false") boolean stream,
+                                 @RequestParam(defaultValue = "summary") String format,
+                                 HttpServletRequest httpRequest, HttpServletResponse response) throws IOException {
+        boolean perDate = "long".equalsIgnoreCase(format);
+        String variant = "csv:" + (perDate ? "long" : stream ? "stream" : "summary");
+        sendReport(variant, request, "text/csv;charset=UTF-8", "stock-analysis.csv", httpRequest, response, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            if (stream || perDate) {
+                AtomicBoolean complete = new AtomicBoolean(true);
+                CSVPrinter csvPrinter = CsvExportUtil.openCsv(writer, perDate);
+                aggregatorService.streamAggregate(request, (data, history) -> {
+                    complete.compareAndSet(true, data.getClosingPrices() != null);
+                    if (perDate) {
+                        CsvExportUtil.writeSeriesRows(csvPrinter, data, history, request);
+                    } else {
+                        CsvExportUtil.writeSummaryRow(csvPrinter, data);
+                    }
+                    // One chunk per symbol keeps time-to-first-byte independent of the symbol count
+                    csvPrinter.flush();
+                });
+                csvPrinter.flush();
+                return complete.get();
+            }
+            Map<String, StockData> result = aggregate(request);
+            CsvExportUtil.writeStockDataToCsv(result, new PrintWriter(writer));
+            return isComplete(result);
+        });
     }
 
-    @Operation(summary = "Export stock analytics as Excel", description = "Fetches stock data and analytics for the given symbols and returns the result as a downloadable Excel (.xlsx) file. Custom periods and optional date range can be specified.")
+    @Operation(summary = "Export stock analytics as Excel", description = "Fetches stock data and analytics for the given symbols and returns the result as a downloadable Excel (.xlsx) file. Custom periods and optional date range can be specified. With stream=true the workbook is built with a bounded row window spilled to temp files; format=long (always streamed) writes one row per symbol and date, optionally with a sheet per symbol. Reports are cached per request and data version; send the returned ETag in If-None-Match to get a 304 when nothing changed.")
     @PostMapping(value = "/analyze/excel", produces = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-    public void analyzeStocksExcel(@RequestBody AnalyticsRequest request, jakarta.servlet.http.HttpServletResponse response) throws java.io.IOException {
-        Map<String, StockData> result = (request.getStartDate() != null && request.getEndDate() != null)
-            ? aggregatorService.fetchAndAggregateWithDateRange(
-                request.getSymbols(),
-                request.getMovingAveragePeriod(),
-                request.getVolatilityPeriod(),
-                request.getShortMAPeriod(),
-                request.getLongMAPeriod(),
-                request.getStartDate(),
-                request.getEndDate())
-            : aggregatorService.fetchAndAggregate(
-                request.getSymbols(),
-                request.getMovingAveragePeriod(),
-                request.getVolatilityPeriod(),
-                request.getShortMAPeriod(),
-                request.getLongMAPeriod());
-        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        response.setHeader("Content-Disposition", "attachment; filename=stock-analysis.xlsx");
-        ExcelExportUtil.writeStockDataToExcel(result, response.getOutputStream());
+    public void analyzeStocksExcel(@RequestBody AnalyticsRequest request,
+                                   @RequestParam(defaultValue = "false") boolean stream,
+                                   @RequestParam(defaultValue = "summary") String format,
+                                   @RequestParam(defaultValue = "false") boolean sheetPerSymbol,
+                                   HttpServletRequest httpRequest, HttpServletResponse response) throws IOException {
+        boolean perDate = "long".equalsIgnoreCase(format);
+        String variant = "excel:" + (perDate ? "long" : stream ? "stream" : "summary") + (perDate && sheetPerSymbol ? ":sheets" : "");
+        sendReport(variant, request, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "stock-analysis.xlsx",
+                httpRequest, response, out -> {
+            if (stream || perDate) {
+                AtomicBoolean complete = new AtomicBoolean(true);
+                try (ExcelExportUtil.StreamingWriter writer = ExcelExportUtil.openStreaming(
+                        exportConfig.getExcelRowWindow(), exportConfig.isExcelCompressTempFiles(), perDate, sheetPerSymbol)) {
+                    aggregatorService.streamAggregate(request, (data, history) -> {
+                        complete.compareAndSet(true, data.getClosingPrices() != null);
+                        if (perDate) {
+                            writer.writeSeries(data, history, request);
+                        } else {
+                            writer.writeSummary(data);
+                        }
+                    });
+                    writer.finish(out);
+                }
+                return complete.get();
+            }
+            Map<String, StockData> result = aggregate(request);
+            ExcelExportUtil.writeStockDataToExcel(result, out);
+            return isComplete(result);
+        });
     }
 
-    @Operation(summary = "Export stock analytics as PDF", description = "Fetches stock data and analytics for the given symbols and returns the result as a downloadable PDF file. Custom periods and optional date range can be specified.")
+    @Operation(summary = "Export stock analytics as PDF", description = "Fetches stock data and analytics for the given symbols and returns the result as a downloadable PDF file. Custom periods and optional date range can be specified. With stream=true rows are drawn as each symbol completes and page content beyond a configured heap budget is kept in a scratch file. Reports are cached per request and data version; send the returned ETag in If-None-Match to get a 304 when nothing changed.")
     @PostMapping(value = "/analyze/pdf", produces = "application/pdf")
-    public void analyzeStocksPdf(@RequestBody AnalyticsRequest request, HttpServletResponse response) throws java.io.IOException {
-        Map<String, StockData> result = (request.getStartDate() != null && request.getEndDate() != null)
+    public void analyzeStocksPdf(@RequestBody AnalyticsRequest request,
+                                 @RequestParam(defaultValue = "false") boolean stream,
+                                 HttpServletRequest httpRequest, HttpServletResponse response) throws IOException {
+        sendReport(stream ? "pdf:stream" : "pdf:summary", request, "application/pdf", "stock-analysis.pdf", httpRequest, response, out -> {
+            if (stream) {
+                AtomicBoolean complete = new AtomicBoolean(true);
+                try (PdfExportUtil.StreamingWriter writer = PdfExportUtil.openStreaming(
+                        MemoryUsageSetting.setupMixed(exportConfig.getPdfMaxMainMemoryBytes()))) {
+                    aggregatorService.streamAggregate(request, (data, history) -> {
+                        complete.compareAndSet(true, data.getClosingPrices() != null);
+                        writer.writeSummary(data);
+                    });
+                    writer.finish(out);
+                }
+                return complete.get();
+            }
+            Map<String, StockData> result = aggregate(request);
+            PdfExportUtil.writeStockDataToPdf(result, out);
+            return isComplete(result);
+        });
+    }
+
+    @Operation(summary = "Stream price updates", description = "Server-sent events with each newly recorded close and the indicator values it rolled forward, for the given comma-separated symbols or for all symbols when omitted. Replaces polling the analysis endpoints for changes.")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPrices(@RequestParam(required = false) List<String> symbols) {
+        return priceStreamService.subscribe(symbols);
+    }
+
+    @Operation(summary = "Invalidate cached stock data", description = "Drops every cached history depth of the given symbol from the in-process and Redis caches, so the next analysis reads fresh data.")
+    @DeleteMapping("/cache/{symbol}")
+    public ResponseEntity<Void> evictCachedData(@PathVariable String symbol) {
+        stockService.evictCachedData(symbol);
+        return ResponseEntity.noContent().build();
+    }
+
+    /** Writes a report to {@code out}; returns whether every symbol had data, so the output may be cached. */
+    @FunctionalInterface
+    private interface ReportRenderer {
+        boolean render(OutputStream out) throws IOException;
+    }
+
+    /** Serves the report from the cache, or renders it while copying the bytes into the cache. */
+    private void sendReport(String variant, AnalyticsRequest request, String contentType, String filename,
+                            HttpServletRequest httpRequest, HttpServletResponse response, ReportRenderer renderer) throws IOException {
+        String key = reportCache.key(variant, request);
+        if (reportCache.serve(key, httpRequest, response, contentType, filename)) return;
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+        try (ReportCache.Capture capture = reportCache.capture(key, response)) {
+            boolean complete = renderer.render(capture.stream());
+            // Failed symbols are retried next time, and bars stored mid-render belong to a newer key
+            capture.commit(complete && key != null && key.equals(reportCache.key(variant, request)));
+        }
+    }
+
+    private Map<String, StockData> aggregate(AnalyticsRequest request) {
+        return (request.getStartDate() != null && request.getEndDate() != null)
             ? aggregatorService.fetchAndAggregateWithDateRange(
                 request.getSymbols(),
                 request.getMovingAveragePeriod(),
@@ -110,8 +211,9 @@ public class StockController {
                 request.getVolatilityPeriod(),
                 request.getShortMAPeriod(),
                 request.getLongMAPeriod());
-        response.setContentType("application/pdf");
-        response.setHeader("Content-Disposition", "attachment; filename=stock-analysis.pdf");
-        com.example.stockmarket.util.PdfExportUtil.writeStockDataToPdf(result, response.getOutputStream());
+    }
+
+    private static boolean isComplete(Map<String, StockData> result) {
+        return result.values().stream().allMatch(data -> data.getClosingPrices() != null);
     }
 }
@@ -0,0 +1,40 @@
+package com.example.stockmarket.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Data
+@Table(name = "analysis_job", indexes = @Index(name = "idx_analysis_job_status", columnList = "status"))
+public class AnalysisJob {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.QUEUED;
+
+    // The normalized AnalyticsRequest as JSON, so any node can run or resume the job
+    @Column(name = "request_json", nullable = false, columnDefinition = "text")
+    private String requestJson;
+
+    @Column(name = "total_symbols", nullable = false)
+    private int totalSymbols;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    @Column(length = 1024)
+    private String error;
+}
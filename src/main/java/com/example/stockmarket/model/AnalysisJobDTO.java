@@ -0,0 +1,18 @@
+package com.example.stockmarket.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class AnalysisJobDTO {
+    private Long id;
+    private AnalysisJob.Status status;
+    private int totalSymbols;
+    private long completedSymbols;
+    private long failedSymbols;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
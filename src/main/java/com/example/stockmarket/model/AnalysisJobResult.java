@@ -0,0 +1,34 @@
+package com.example.stockmarket.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Data
+@Table(name = "analysis_job_result",
+        uniqueConstraints = @UniqueConstraint(name = "uk_analysis_job_result_position", columnNames = {"job_id", "position"}))
+public class AnalysisJobResult {
+    public static final int MAX_SYMBOL_LENGTH = 16;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    // Index of the symbol in the job's request; results are paged in request order
+    @Column(nullable = false)
+    private int position;
+
+    @Column(nullable = false, length = MAX_SYMBOL_LENGTH)
+    private String symbol;
+
+    // True when the symbol could not be fetched or analyzed; retried by a job retry
+    @Column(nullable = false)
+    private boolean failed;
+
+    // The StockData as returned by /api/stocks/analyze
+    @Column(name = "data_json", nullable = false, columnDefinition = "text")
+    private String dataJson;
+}
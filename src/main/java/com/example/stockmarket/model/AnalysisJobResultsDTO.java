@@ -0,0 +1,16 @@
+package com.example.stockmarket.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AnalysisJobResultsDTO {
+    private Long jobId;
+    private AnalysisJob.Status status;
+    private int page;
+    private int size;
+    private long totalResults;
+    private int totalPages;
+    private List<StockData> results;
+}
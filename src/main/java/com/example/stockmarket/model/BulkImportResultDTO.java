@@ -0,0 +1,13 @@
+package com.example.stockmarket.model;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class BulkImportResultDTO {
+    private int imported;
+    private int rejected;
+    // Symbols without a cached price; their positions get one once the quote arrives
+    private int symbolsPricePending;
+    private List<String> errors;
+}
@@ -0,0 +1,25 @@
+package com.example.stockmarket.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Entity
+@Data
+@Table(name = "daily_bar",
+        uniqueConstraints = @UniqueConstraint(name = "uk_daily_bar_symbol_date", columnNames = {"symbol", "trade_date"}))
+public class DailyBar {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 16)
+    private String symbol;
+
+    @Column(name = "trade_date", nullable = false)
+    private LocalDate tradeDate;
+
+    @Column(name = "close_price", nullable = false)
+    private Double closePrice;
+}
@@ -8,6 +8,7 @@ import java.util.List;
 
 @Entity
 @Data
+@Table(indexes = @Index(name = "idx_portfolio_owner_id", columnList = "owner, id"))
 public class Portfolio {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,11 @@
+package com.example.stockmarket.model;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class PortfolioPageDTO {
+    private List<PortfolioSummaryDTO> portfolios;
+    // Pass as ?after= to get the next page; null on the last page
+    private Long nextCursor;
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 
 @Entity
 @Data
+@Table(indexes = @Index(name = "idx_portfolio_stock_portfolio", columnList = "portfolio_id"))
 public class PortfolioStock {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
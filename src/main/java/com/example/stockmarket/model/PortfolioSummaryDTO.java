@@ -0,0 +1,34 @@
+package com.example.stockmarket.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class PortfolioSummaryDTO {
+    private Long id;
+    private String name;
+    private String owner;
+    private LocalDateTime createdAt;
+    // Only filled in when the listing asks for stocks
+    private List<Position> stocks;
+
+    // Selected directly by PortfolioRepository
+    public PortfolioSummaryDTO(Long id, String name, String owner, LocalDateTime createdAt) {
+        this.id = id;
+        this.name = name;
+        this.owner = owner;
+        this.createdAt = createdAt;
+    }
+
+    @Data
+    public static class Position {
+        private Long id;
+        private String symbol;
+        private Integer quantity;
+        private Double buyPrice;
+        private Double currentPrice;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.stockmarket.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable daily close series ordered by date, stored as parallel primitive columns
+ * (epoch days and closes). The columns are heap arrays or views into a memory-mapped file;
+ * slices share them, so sub-ranges cost no copy.
+ * Serialized to JSON as a {@code {"yyyy-MM-dd": close}} object, matching the former map form.
+ */
+@JsonSerialize(using = PriceSeries.Serializer.class)
+@JsonDeserialize(using = PriceSeries.Deserializer.class)
+public final class PriceSeries {
+    private static final PriceSeries EMPTY = new PriceSeries(IntBuffer.allocate(0), DoubleBuffer.allocate(0), 0, 0);
+
+    private final IntBuffer epochDays;
+    private final DoubleBuffer closes;
+    private final int offset;
+    private final int length;
+
+    private PriceSeries(IntBuffer epochDays, DoubleBuffer closes, int offset, int length) {
+        this.epochDays = epochDays;
+        this.closes = closes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static PriceSeries empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Takes ownership of the given arrays; callers must not modify them afterwards.
+     * Dates must be strictly ascending.
+     */
+    public static PriceSeries of(int[] epochDays, double[] closes) {
+        return of(epochDays, closes, epochDays.length);
+    }
+
+    public static PriceSeries of(int[] epochDays, double[] closes, int length) {
+        if (epochDays.length < length || closes.length < length) {
+            throw new IllegalArgumentException("Length exceeds backing arrays");
+        }
+        for (int i = 1; i < length; i++) {
+            if (epochDays[i] <= epochDays[i - 1]) {
+                throw new IllegalArgumentException("Dates must be strictly ascending");
+            }
+        }
+        return length == 0 ? EMPTY : new PriceSeries(IntBuffer.wrap(epochDays), DoubleBuffer.wrap(closes), 0, length);
+    }
+
+    /**
+     * Wraps existing columns, such as views into a memory-mapped file, without copying or
+     * re-validating them. The first {@code length} dates must be strictly ascending.
+     */
+    public static PriceSeries wrap(IntBuffer epochDays, DoubleBuffer closes, int length) {
+        if (epochDays.limit() < length || closes.limit() < length) {
+            throw new IllegalArgumentException("Length exceeds backing columns");
+        }
+        return length == 0 ? EMPTY : new PriceSeries(epochDays, closes, 0, length);
+    }
+
+    /**
+     * Sorts the first {@code length} bars by date in place, keeping the last close seen for a
+     * repeated date. Takes ownership of the arrays like {@link #of(int[], double[])}.
+     */
+    public static PriceSeries sorted(int[] epochDays, double[] closes, int length) {
+        return of(epochDays, closes, sortByDate(epochDays, closes, length));
+    }
+
+    public static PriceSeries fromMap(Map<LocalDate, Double> prices) {
+        if (prices == null || prices.isEmpty()) return EMPTY;
+        int[] days = new int[prices.size()];
+        double[] values = new double[prices.size()];
+        int n = 0;
+        for (Map.Entry<LocalDate, Double> entry : prices.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                days[n] = (int) entry.getKey().toEpochDay();
+                values[n] = entry.getValue();
+                n++;
+            }
+        }
+        return of(days, values, sortByDate(days, values, n));
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public int epochDayAt(int index) {
+        return epochDays.get(offset + checkIndex(index));
+    }
+
+    public LocalDate dateAt(int index) {
+        return LocalDate.ofEpochDay(epochDayAt(index));
+    }
+
+    public double closeAt(int index) {
+        return closes.get(offset + checkIndex(index));
+    }
+
+    public LocalDate firstDate() {
+        return isEmpty() ? null : dateAt(0);
+    }
+
+    public LocalDate lastDate() {
+        return isEmpty() ? null : dateAt(length - 1);
+    }
+
+    public Double latestClose() {
+        return isEmpty() ? null : closeAt(length - 1);
+    }
+
+    /**
+     * Returns the index of the given date, or {@code -(insertionPoint) - 1} when absent,
+     * following {@link Arrays#binarySearch(int[], int)}.
+     */
+    public int indexOf(LocalDate date) {
+        return binarySearch((int) date.toEpochDay());
+    }
+
+    public Double closeOn(LocalDate date) {
+        int index = indexOf(date);
+        return index >= 0 ? closeAt(index) : null;
+    }
+
+    /** Zero-copy view of the bars in {@code [fromIndex, toIndex)}. */
+    public PriceSeries slice(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Invalid slice [" + fromIndex + ", " + toIndex + ") of " + length);
+        }
+        if (fromIndex == 0 && toIndex == length) return this;
+        if (fromIndex == toIndex) return EMPTY;
+        return new PriceSeries(epochDays, closes, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /** Zero-copy view of the bars dated within {@code [startDate, endDate]}, both inclusive. */
+    public PriceSeries between(LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(startDate != null ? (int) startDate.toEpochDay() : Integer.MIN_VALUE);
+        int to = endDate != null ? lowerBound((int) endDate.toEpochDay() + 1) : length;
+        return from >= to ? EMPTY : slice(from, to);
+    }
+
+    /** Zero-copy view of the newest {@code count} bars. */
+    public PriceSeries tail(int count) {
+        return slice(Math.max(0, length - count), length);
+    }
+
+    /** Copies the closes into a new array, for callers that need to own the data. */
+    public double[] closesToArray() {
+        double[] copy = new double[length];
+        closes.get(offset, copy);
+        return copy;
+    }
+
+    private int lowerBound(int epochDay) {
+        int index = binarySearch(epochDay);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int binarySearch(int epochDay) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midDay = epochDays.get(offset + mid);
+            if (midDay < epochDay) {
+                low = mid + 1;
+            } else if (midDay > epochDay) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        return index;
+    }
+
+    /**
+     * Sorts the first {@code n} bars by date in place and collapses repeated dates into the
+     * last close seen for them, as the former map form did. Returns the number of bars left.
+     */
+    private static int sortByDate(int[] days, double[] values, int n) {
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) {
+            sorted = days[i] > days[i - 1];
+        }
+        if (sorted) return n;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = ((long) days[i] << 32) | (i & 0xFFFFFFFFL);
+        }
+        // Equal dates stay in input order, so the last one seen ends up last
+        Arrays.sort(packed);
+        double[] copy = Arrays.copyOf(values, n);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int day = (int) (packed[i] >> 32);
+            if (count > 0 && days[count - 1] == day) count--;
+            days[count] = day;
+            values[count] = copy[(int) packed[i]];
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PriceSeries other) || other.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (epochDays.get(offset + i) != other.epochDays.get(other.offset + i)
+                    || Double.compare(closes.get(offset + i), other.closes.get(other.offset + i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            result = 31 * result + epochDays.get(offset + i);
+            result = 31 * result + Double.hashCode(closes.get(offset + i));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceSeries[size=" + length + ", from=" + firstDate() + ", to=" + lastDate() + "]";
+    }
+
+    static class Serializer extends JsonSerializer<PriceSeries> {
+        @Override
+        public void serialize(PriceSeries series, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            for (int i = 0; i < series.size(); i++) {
+                gen.writeFieldName(series.dateAt(i).toString());
+                gen.writeNumber(series.closeAt(i));
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    static class Deserializer extends JsonDeserializer<PriceSeries> {
+        @Override
+        public PriceSeries deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
+            int[] days = new int[64];
+            double[] values = new double[64];
+            int n = 0;
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT) token = parser.nextToken();
+            while (token == JsonToken.FIELD_NAME) {
+                if (n == days.length) {
+                    days = Arrays.copyOf(days, n * 2);
+                    values = Arrays.copyOf(values, n * 2);
+                }
+                days[n] = (int) LocalDate.parse(parser.currentName()).toEpochDay();
+                // Bars without a close are skipped, as in fromMap
+                if (parser.nextToken() != JsonToken.VALUE_NULL) {
+                    values[n] = parser.getDoubleValue();
+                    n++;
+                }
+                token = parser.nextToken();
+            }
+            return of(days, values, sortByDate(days, values, n));
+        }
+    }
+}
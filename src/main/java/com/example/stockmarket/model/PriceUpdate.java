@@ -0,0 +1,24 @@
+package com.example.stockmarket.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * A newly recorded close for one symbol, pushed to price stream subscribers. {@code indicators}
+ * holds the rolled-forward analytics per stored parameter set (keyed like
+ * {@code IndicatorState.parameterKey()}), or is empty when only the price is known.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceUpdate {
+    private String symbol;
+    private LocalDate date;
+    private Double price;
+    private Double previousClose;
+    private Map<String, StockData> indicators;
+}
@@ -4,15 +4,12 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.time.LocalDate;
-import java.util.Map;
-
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class StockData {
     private String symbol;
-    private Map<LocalDate, Double> closingPrices;
+    private PriceSeries closingPrices;
     private Double latestPrice;
     private Double movingAverage;
     private Double volatility;
@@ -24,14 +21,17 @@ public class StockData {
     private Double macd;
     private Double macdSignal;
 
-    public StockData(String symbol, Map<LocalDate, Double> closingPrices) {
+    public StockData(String symbol, PriceSeries closingPrices) {
         this.symbol = symbol;
         this.closingPrices = closingPrices;
-        if (closingPrices != null && !closingPrices.isEmpty()) {
-            this.latestPrice = closingPrices.entrySet().stream()
-                .max(Map.Entry.comparingByKey())
-                .map(Map.Entry::getValue)
-                .orElse(null);
+        if (closingPrices != null) {
+            this.latestPrice = closingPrices.latestClose();
         }
     }
+
+    /** Shallow copy; the price series is immutable and safely shared. */
+    public StockData copy() {
+        return new StockData(symbol, closingPrices, latestPrice, movingAverage, volatility, ema, rsi, statusMessage,
+                bollingerUpper, bollingerLower, macd, macdSignal);
+    }
 }
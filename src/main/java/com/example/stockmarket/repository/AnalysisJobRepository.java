@@ -0,0 +1,13 @@
+package com.example.stockmarket.repository;
+
+import com.example.stockmarket.model.AnalysisJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJob, Long> {
+    List<AnalysisJob> findByStatusInOrderById(Collection<AnalysisJob.Status> statuses);
+
+    long countByStatusIn(Collection<AnalysisJob.Status> statuses);
+}
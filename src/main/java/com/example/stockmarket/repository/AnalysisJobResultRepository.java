@@ -0,0 +1,30 @@
+package com.example.stockmarket.repository;
+
+import com.example.stockmarket.model.AnalysisJobResult;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface AnalysisJobResultRepository extends JpaRepository<AnalysisJobResult, Long> {
+    Page<AnalysisJobResult> findByJobIdOrderByPosition(Long jobId, Pageable pageable);
+
+    @Query("select r.position from AnalysisJobResult r where r.jobId = :jobId")
+    List<Integer> findPositionsByJobId(@Param("jobId") Long jobId);
+
+    boolean existsByJobIdAndPosition(Long jobId, int position);
+
+    long countByJobId(Long jobId);
+
+    long countByJobIdAndFailedTrue(Long jobId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from AnalysisJobResult r where r.jobId = :jobId and r.failed = true")
+    int deleteFailedByJobId(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,20 @@
+package com.example.stockmarket.repository;
+
+import com.example.stockmarket.model.DailyBar;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface DailyBarRepository extends JpaRepository<DailyBar, Long> {
+    @Query("select max(b.tradeDate) from DailyBar b where b.symbol = :symbol")
+    LocalDate findLatestTradeDate(@Param("symbol") String symbol);
+
+    /** Rows of {@code [symbol, latest trade date]} for the given symbols that have bars. */
+    @Query("select b.symbol, max(b.tradeDate) from DailyBar b where b.symbol in :symbols group by b.symbol")
+    List<Object[]> findLatestTradeDates(@Param("symbols") Collection<String> symbols);
+
+}
@@ -1,10 +1,34 @@
 package com.example.stockmarket.repository;
 
 import com.example.stockmarket.model.Portfolio;
+import com.example.stockmarket.model.PortfolioSummaryDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
 public interface PortfolioRepository extends JpaRepository<Portfolio, Long> {
-    List<Portfolio> findByOwner(String owner);
+    /** Portfolios with an id above {@code after}, in id order; the page size comes from {@code pageable}. */
+    @Query("select new com.example.stockmarket.model.PortfolioSummaryDTO(p.id, p.name, p.owner, p.createdAt)"
+            + " from Portfolio p where p.id > :after order by p.id")
+    List<PortfolioSummaryDTO> findSummariesAfter(@Param("after") Long after, Pageable pageable);
+
+    @Query("select new com.example.stockmarket.model.PortfolioSummaryDTO(p.id, p.name, p.owner, p.createdAt)"
+            + " from Portfolio p where p.owner = :owner and p.id > :after order by p.id")
+    List<PortfolioSummaryDTO> findSummariesByOwnerAfter(@Param("owner") String owner, @Param("after") Long after, Pageable pageable);
+
+    /**
+     * One row per portfolio of {@code owner}: id, name, owner, total value and total cost, with
+     * the same fallbacks as the per-portfolio analytics (missing current price counts at cost).
+     */
+    @Query("select p.id, p.name, p.owner,"
+            + " coalesce(sum(coalesce(s.currentPrice, s.buyPrice, 0.0) * coalesce(s.quantity, 0)), 0.0),"
+            + " coalesce(sum(coalesce(s.buyPrice, 0.0) * coalesce(s.quantity, 0)), 0.0)"
+            + " from Portfolio p left join p.stocks s"
+            + " where p.owner = :owner"
+            + " group by p.id, p.name, p.owner"
+            + " order by p.id")
+    List<Object[]> findValuationsByOwner(@Param("owner") String owner);
 }
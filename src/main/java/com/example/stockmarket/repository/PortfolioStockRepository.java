@@ -2,9 +2,26 @@ package com.example.stockmarket.repository;
 
 import com.example.stockmarket.model.PortfolioStock;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface PortfolioStockRepository extends JpaRepository<PortfolioStock, Long> {
     List<PortfolioStock> findByPortfolioId(Long portfolioId);
+
+    @Query("select distinct s.symbol from PortfolioStock s where s.symbol is not null order by s.symbol")
+    List<String> findDistinctSymbols();
+
+    /** Portfolio id, symbol, quantity, buy price and current price of every position of {@code owner}. */
+    @Query("select s.portfolio.id, s.symbol, s.quantity, s.buyPrice, s.currentPrice from PortfolioStock s"
+            + " where s.portfolio.owner = :owner and s.symbol is not null and s.symbol <> ''"
+            + " order by s.portfolio.id, s.id")
+    List<Object[]> findPositionsByOwner(@Param("owner") String owner);
+
+    /** Portfolio id, position id, symbol, quantity, buy price and current price of the portfolios' positions. */
+    @Query("select s.portfolio.id, s.id, s.symbol, s.quantity, s.buyPrice, s.currentPrice from PortfolioStock s"
+            + " where s.portfolio.id in :portfolioIds order by s.portfolio.id, s.id")
+    List<Object[]> findPositionsByPortfolioIds(@Param("portfolioIds") Collection<Long> portfolioIds);
 }
@@ -0,0 +1,20 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalysisJobDTO;
+import com.example.stockmarket.model.AnalysisJobResultsDTO;
+import com.example.stockmarket.model.AnalyticsRequest;
+import java.util.Optional;
+
+public interface AnalysisJobService {
+    /**
+     * Persists {@code request} as a queued job and schedules it; the job runs in the background.
+     *
+     * @throws IllegalArgumentException if the request has no symbols
+     * @throws java.util.concurrent.RejectedExecutionException if too many jobs are pending
+     */
+    AnalysisJobDTO submit(AnalyticsRequest request);
+    Optional<AnalysisJobDTO> getJob(Long id);
+    Optional<AnalysisJobResultsDTO> getResults(Long id, int page, int size);
+    /** Requeues a finished job; only its failed symbols are analyzed again. */
+    Optional<AnalysisJobDTO> retry(Long id);
+}
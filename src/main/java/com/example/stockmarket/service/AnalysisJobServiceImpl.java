@@ -0,0 +1,292 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalysisJob;
+import com.example.stockmarket.model.AnalysisJobDTO;
+import com.example.stockmarket.model.AnalysisJobResult;
+import com.example.stockmarket.model.AnalysisJobResultsDTO;
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.StockData;
+import com.example.stockmarket.repository.AnalysisJobRepository;
+import com.example.stockmarket.repository.AnalysisJobResultRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs analysis jobs in the background. A job's request and every analyzed symbol are stored as
+ * they complete, so polling reads progress from the database and a job interrupted by a restart
+ * or a failed node resumes with only the symbols it has no result for. Jobs run on a bounded
+ * pool ({@code stockmarket.jobs.max-running}), each with at most
+ * {@code stockmarket.jobs.per-job-concurrency} symbols in flight, and hold a Redis lease while
+ * running so a job is worked on by one node at a time.
+ */
+@Service
+public class AnalysisJobServiceImpl implements AnalysisJobService {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobServiceImpl.class);
+    private static final String LEASE_PREFIX = "analysis-job:";
+    private static final List<AnalysisJob.Status> PENDING = List.of(AnalysisJob.Status.QUEUED, AnalysisJob.Status.RUNNING);
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final AnalysisJobRepository jobRepository;
+    private final AnalysisJobResultRepository resultRepository;
+    private final DataAggregatorService aggregatorService;
+    private final LeaseManager leaseManager;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService jobExecutorService;
+    private final int perJobConcurrency;
+    private final int maxPending;
+    private final Duration leaseTtl;
+    // Jobs queued or running on this node
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+
+    public AnalysisJobServiceImpl(AnalysisJobRepository jobRepository, AnalysisJobResultRepository resultRepository,
+                                  DataAggregatorService aggregatorService, LeaseManager leaseManager, ObjectMapper objectMapper,
+                                  @Qualifier("analysisJobExecutorService") ExecutorService jobExecutorService,
+                                  @Value("${stockmarket.jobs.per-job-concurrency:8}") int perJobConcurrency,
+                                  @Value("${stockmarket.jobs.max-pending:100}") int maxPending,
+                                  @Value("${stockmarket.jobs.lease-ttl-ms:120000}") long leaseTtlMillis) {
+        this.jobRepository = jobRepository;
+        this.resultRepository = resultRepository;
+        this.aggregatorService = aggregatorService;
+        this.leaseManager = leaseManager;
+        this.objectMapper = objectMapper;
+        this.jobExecutorService = jobExecutorService;
+        this.perJobConcurrency = Math.max(1, perJobConcurrency);
+        this.maxPending = maxPending;
+        this.leaseTtl = Duration.ofMillis(leaseTtlMillis);
+    }
+
+    @Override
+    public AnalysisJobDTO submit(AnalyticsRequest request) {
+        Set<String> symbols = new LinkedHashSet<>();
+        if (request.getSymbols() != null) {
+            for (String symbol : request.getSymbols()) {
+                if (symbol == null || symbol.isBlank()) continue;
+                String trimmed = symbol.trim();
+                if (trimmed.length() > AnalysisJobResult.MAX_SYMBOL_LENGTH) {
+                    throw new IllegalArgumentException("Symbol longer than " + AnalysisJobResult.MAX_SYMBOL_LENGTH
+                            + " characters: " + trimmed);
+                }
+                symbols.add(trimmed);
+            }
+        }
+        if (symbols.isEmpty()) {
+            throw new IllegalArgumentException("At least one symbol is required");
+        }
+        if (jobRepository.countByStatusIn(PENDING) >= maxPending) {
+            throw new RejectedExecutionException("Too many analysis jobs pending");
+        }
+        AnalyticsRequest normalized = new AnalyticsRequest(new ArrayList<>(symbols), request.getMovingAveragePeriod(),
+                request.getVolatilityPeriod(), request.getShortMAPeriod(), request.getLongMAPeriod(),
+                request.getStartDate(), request.getEndDate());
+        AnalysisJob job = new AnalysisJob();
+        job.setRequestJson(toJson(normalized));
+        job.setTotalSymbols(symbols.size());
+        job = jobRepository.save(job);
+        schedule(job.getId());
+        return toDTO(job);
+    }
+
+    @Override
+    public Optional<AnalysisJobDTO> getJob(Long id) {
+        return jobRepository.findById(id).map(this::toDTO);
+    }
+
+    @Override
+    public Optional<AnalysisJobResultsDTO> getResults(Long id, int page, int size) {
+        return jobRepository.findById(id).map(job -> {
+            Page<AnalysisJobResult> results = resultRepository.findByJobIdOrderByPosition(id,
+                    PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), MAX_PAGE_SIZE)));
+            List<StockData> data = new ArrayList<>(results.getNumberOfElements());
+            for (AnalysisJobResult result : results) {
+                data.add(fromJson(result.getDataJson(), StockData.class));
+            }
+            AnalysisJobResultsDTO dto = new AnalysisJobResultsDTO();
+            dto.setJobId(id);
+            dto.setStatus(job.getStatus());
+            dto.setPage(results.getNumber());
+            dto.setSize(results.getSize());
+            dto.setTotalResults(results.getTotalElements());
+            dto.setTotalPages(results.getTotalPages());
+            dto.setResults(data);
+            return dto;
+        });
+    }
+
+    @Override
+    public Optional<AnalysisJobDTO> retry(Long id) {
+        Optional<AnalysisJob> found = jobRepository.findById(id);
+        found.ifPresent(job -> {
+            if (PENDING.contains(job.getStatus())) return;
+            resultRepository.deleteFailedByJobId(id);
+            job.setStatus(AnalysisJob.Status.QUEUED);
+            job.setFinishedAt(null);
+            job.setError(null);
+            jobRepository.save(job);
+            schedule(id);
+        });
+        return found.map(this::toDTO);
+    }
+
+    /**
+     * Picks up pending jobs that no node is running: on startup, jobs interrupted by the last
+     * shutdown, and later, jobs of nodes that died (their lease has expired by then).
+     */
+    @Scheduled(fixedDelayString = "${stockmarket.jobs.resume-interval-ms:60000}")
+    public void resumePendingJobs() {
+        for (AnalysisJob job : jobRepository.findByStatusInOrderById(PENDING)) {
+            schedule(job.getId());
+        }
+    }
+
+    private void schedule(Long id) {
+        if (!scheduled.add(id)) return;
+        try {
+            jobExecutorService.execute(() -> {
+                try {
+                    run(id);
+                } finally {
+                    scheduled.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the job stays pending and is resumed after the restart
+            scheduled.remove(id);
+        }
+    }
+
+    private void run(Long id) {
+        LeaseManager.Lease lease;
+        try {
+            lease = leaseManager.tryAcquire(LEASE_PREFIX + id, leaseTtl);
+            if (lease == null) return; // Running on another node
+        } catch (RedisConnectionFailureException e) {
+            logger.warn("Job leasing unavailable ({}), running analysis job {} unleased", e.getMessage(), id);
+            lease = null;
+        }
+        try (LeaseManager.Lease held = lease) {
+            AnalysisJob job = jobRepository.findById(id).orElse(null);
+            if (job == null || !PENDING.contains(job.getStatus())) return;
+            execute(job, held);
+        }
+    }
+
+    private void execute(AnalysisJob job, LeaseManager.Lease lease) {
+        Long id = job.getId();
+        try {
+            AnalyticsRequest request = fromJson(job.getRequestJson(), AnalyticsRequest.class);
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < request.getSymbols().size(); i++) {
+                positions.put(request.getSymbols().get(i), i);
+            }
+            // Symbols analyzed before a restart or an earlier attempt are not recomputed
+            Set<Integer> done = new HashSet<>(resultRepository.findPositionsByJobId(id));
+            List<String> remaining = new ArrayList<>();
+            for (int i = 0; i < request.getSymbols().size(); i++) {
+                if (!done.contains(i)) remaining.add(request.getSymbols().get(i));
+            }
+            job.setStatus(AnalysisJob.Status.RUNNING);
+            if (job.getStartedAt() == null) job.setStartedAt(LocalDateTime.now());
+            job = jobRepository.save(job);
+            logger.info("Analysis job {}: {} of {} symbol(s) to analyze", id, remaining.size(), job.getTotalSymbols());
+
+            request.setSymbols(remaining);
+            aggregatorService.streamAggregate(request, perJobConcurrency, (data, history) -> {
+                if (lease != null && lease.isLost()) {
+                    throw new LeaseLostException(id);
+                }
+                saveResult(id, positions.get(data.getSymbol()), data);
+            });
+            job.setStatus(AnalysisJob.Status.COMPLETED);
+        } catch (LeaseLostException e) {
+            // Another node took the job over and finishes it
+            logger.warn("Analysis job {} stopped on this node: {}", id, e.getMessage());
+            return;
+        } catch (Exception e) {
+            logger.error("Analysis job {} failed", id, e);
+            job.setStatus(AnalysisJob.Status.FAILED);
+            String message = String.valueOf(e.getMessage());
+            job.setError(message.length() > 1024 ? message.substring(0, 1024) : message);
+        }
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepository.save(job);
+    }
+
+    private void saveResult(Long jobId, int position, StockData data) {
+        AnalysisJobResult result = new AnalysisJobResult();
+        result.setJobId(jobId);
+        result.setPosition(position);
+        result.setSymbol(data.getSymbol());
+        result.setFailed(data.getClosingPrices() == null);
+        result.setDataJson(toJson(data));
+        try {
+            resultRepository.save(result);
+        } catch (DataIntegrityViolationException e) {
+            // Only a result stored by an earlier attempt that overlapped this one is expected
+            if (!resultRepository.existsByJobIdAndPosition(jobId, position)) throw e;
+            logger.debug("Result {} of analysis job {} already stored", position, jobId);
+        }
+    }
+
+    private AnalysisJobDTO toDTO(AnalysisJob job) {
+        AnalysisJobDTO dto = new AnalysisJobDTO();
+        dto.setId(job.getId());
+        dto.setStatus(job.getStatus());
+        dto.setTotalSymbols(job.getTotalSymbols());
+        // Progress comes from the stored results, so it is the same whichever node is asked
+        dto.setCompletedSymbols(resultRepository.countByJobId(job.getId()));
+        dto.setFailedSymbols(resultRepository.countByJobIdAndFailedTrue(job.getId()));
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setStartedAt(job.getStartedAt());
+        dto.setFinishedAt(job.getFinishedAt());
+        dto.setError(job.getError());
+        return dto;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class LeaseLostException extends IOException {
+        LeaseLostException(Long id) {
+            super("Lost the lease on analysis job " + id);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder for {@code TIME_SERIES_DAILY} responses. Dates and closes go straight into
+ * primitive columns and every other field is skipped unread. Alpha Vantage lists the newest bar
+ * first, so decoding stops as soon as a bar is not newer than {@code after}; the rest of the body
+ * is never parsed.
+ */
+public class DailySeriesParser implements MarketDataClient.ResponseParser<DailySeriesParser.Result> {
+    private static final Logger log = LoggerFactory.getLogger(DailySeriesParser.class);
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String TIME_SERIES_KEY_PREFIX = "Time Series";
+    private static final String ERROR_MESSAGE_KEY = "Error Message";
+    private static final String NOTE_KEY = "Note";
+    private static final String INFORMATION_KEY = "Information";
+    private static final String CLOSE_KEY = "4. close";
+
+    /** Either the decoded bars (ascending) or an error message for the caller to report. */
+    public record Result(PriceSeries bars, String error) {
+        static Result error(String message) {
+            return new Result(null, message);
+        }
+    }
+
+    private final int afterDay;
+
+    /**
+     * @param after only bars dated after this day are kept; {@code null} keeps all
+     */
+    public DailySeriesParser(LocalDate after) {
+        this.afterDay = after != null ? (int) after.toEpochDay() : Integer.MIN_VALUE;
+    }
+
+    @Override
+    public Result parse(InputStream body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Result.error("No response from Alpha Vantage API");
+            }
+            List<String> keys = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                keys.add(name);
+                JsonToken value = parser.nextToken();
+                if (name.contains(TIME_SERIES_KEY_PREFIX) && value == JsonToken.START_OBJECT) {
+                    return new Result(readSeries(parser), null);
+                }
+                if (NOTE_KEY.equals(name) || INFORMATION_KEY.equals(name)) {
+                    String message = parser.getValueAsString("");
+                    if (MarketDataClient.isRateLimitNotice(message)) {
+                        throw new MarketDataScheduler.RateLimitedException(message);
+                    }
+                    // e.g. an invalid key or a premium endpoint; retrying will not help
+                    return Result.error("API error: " + message);
+                }
+                if (ERROR_MESSAGE_KEY.equals(name)) {
+                    return Result.error("API error: " + parser.getValueAsString(""));
+                }
+                parser.skipChildren();
+            }
+            return Result.error("Unexpected API response structure: " + keys);
+        }
+    }
+
+    private PriceSeries readSeries(JsonParser parser) throws IOException {
+        int[] days = new int[128];
+        double[] closes = new double[128];
+        int count = 0;
+        int previousDay = Integer.MIN_VALUE;
+        boolean descending = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int day = epochDay(parser.currentName());
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            if (day == Integer.MIN_VALUE) {
+                parser.skipChildren();
+                continue;
+            }
+            // The order is only known from the second bar on
+            if (previousDay != Integer.MIN_VALUE && day >= previousDay) {
+                descending = false;
+            }
+            if (descending && previousDay != Integer.MIN_VALUE && day <= afterDay) {
+                break; // Everything that follows is older
+            }
+            previousDay = day;
+            double close = readClose(parser);
+            if (Double.isNaN(close) || day <= afterDay) continue;
+            if (count == days.length) {
+                days = Arrays.copyOf(days, count * 2);
+                closes = Arrays.copyOf(closes, count * 2);
+            }
+            days[count] = day;
+            closes[count] = close;
+            count++;
+        }
+        if (descending) {
+            reverse(days, closes, count);
+            return PriceSeries.of(days, closes, count);
+        }
+        return PriceSeries.sorted(days, closes, count);
+    }
+
+    /** Reads one bar object, returning its close or NaN when it is missing or malformed. */
+    private static double readClose(JsonParser parser) throws IOException {
+        double close = Double.NaN;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean isClose = CLOSE_KEY.equals(parser.currentName());
+            parser.nextToken();
+            if (isClose) {
+                try {
+                    close = Double.parseDouble(parser.getText());
+                } catch (NumberFormatException e) {
+                    log.warn("Failed to parse double: {}", parser.getText());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return close;
+    }
+
+    /** Parses {@code yyyy-MM-dd} without a formatter, or returns {@link Integer#MIN_VALUE}. */
+    private static int epochDay(String date) {
+        if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+            int year = digits(date, 0, 4);
+            int month = digits(date, 5, 7);
+            int day = digits(date, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                try {
+                    return (int) LocalDate.of(year, month, day).toEpochDay();
+                } catch (DateTimeException ignored) {
+                    // fall through
+                }
+            }
+        }
+        log.warn("Failed to parse date: {}", date);
+        return Integer.MIN_VALUE;
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void reverse(int[] days, double[] closes, int count) {
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int day = days[i];
+            days[i] = days[j];
+            days[j] = day;
+            double close = closes[i];
+            closes[i] = closes[j];
+            closes[j] = close;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.stockmarket.service;
 
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
 import com.example.stockmarket.model.StockData;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -11,4 +14,20 @@ public interface DataAggregatorService {
     Map<String, StockData> fetchAndAggregate(List<String> symbols, int movingAveragePeriod, int volatilityPeriod, int shortMAPeriod, int longMAPeriod);
 
     Map<String, StockData> fetchAndAggregateWithDateRange(List<String> symbols, int movingAveragePeriod, int volatilityPeriod, int shortMAPeriod, int longMAPeriod, LocalDate startDate, LocalDate endDate);
+
+    /** Receives one analyzed symbol; {@code history} also holds the indicator warm-up bars. */
+    @FunctionalInterface
+    interface AnalysisListener {
+        void onAnalyzed(StockData data, PriceSeries history) throws IOException;
+    }
+
+    /**
+     * Analyzes {@code request} like the map-returning methods but hands every symbol to
+     * {@code listener} on the calling thread as soon as it completes, in completion order, with
+     * a bounded number of symbols in flight. Nothing is retained after the listener returns.
+     */
+    void streamAggregate(AnalyticsRequest request, AnalysisListener listener) throws IOException;
+
+    /** Like {@link #streamAggregate(AnalyticsRequest, AnalysisListener)} with at most {@code window} symbols in flight. */
+    void streamAggregate(AnalyticsRequest request, int window, AnalysisListener listener) throws IOException;
 }
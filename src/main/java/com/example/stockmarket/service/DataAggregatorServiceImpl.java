@@ -1,188 +1,189 @@
 package com.example.stockmarket.service;
 
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
 import com.example.stockmarket.model.StockData;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.*;
 
 @Service
 @RequiredArgsConstructor
 public class DataAggregatorServiceImpl implements DataAggregatorService {
     private final StockService stockService;
+    private final IndicatorEngine indicatorEngine;
+    private final IndicatorStateStore indicatorStateStore;
+    private final PriceHistoryStore priceHistoryStore;
+    // Indicator passes are CPU-bound; keep them off the (possibly virtual) fetch threads
+    @Qualifier("indicatorExecutorService")
+    private final ExecutorService indicatorExecutorService;
+    // Indicator state lives in Redis, so its reads and writes stay on the I/O pool
+    private final ExecutorService executorService;
+
+    @Value("${stockmarket.export.stream-window:32}")
+    private int streamWindow;
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /** An analyzed symbol together with the bars it was computed from, warm-up included. */
+    private record Analyzed(StockData data, PriceSeries history) {}
+
+    /** A symbol's latest-value state and the stored bars it still has to fold in before the window's. */
+    private record Resumed(IndicatorState state, PriceSeries missing) {}
 
     @Override
     public Map<String, StockData> fetchAndAggregate(List<String> symbols) {
-        Map<String, Future<StockData>> futures = new ConcurrentHashMap<>();
-        Map<String, StockData> results = new ConcurrentHashMap<>();
-        for (String symbol : symbols) {
-            futures.put(symbol, stockService.fetchStockData(symbol));
-        }
-        futures.forEach((symbol, future) -> {
-            try {
-                StockData data = future.get(30, TimeUnit.SECONDS);
-                if (data.getClosingPrices() == null || data.getClosingPrices().isEmpty()) {
-                    data.setStatusMessage("No data returned from API or symbol not found.");
-                    results.put(symbol, data);
-                    return;
-                }
-                // Calculate analytics
-                List<Double> ma = stockService.calculateMovingAverage(data, 5);
-                if (!ma.isEmpty()) data.setMovingAverage(ma.get(ma.size() - 1));
-                if (data.getClosingPrices() != null && data.getClosingPrices().size() >= 5 && stockService instanceof StockServiceImpl stockServiceImpl) {
-                    Double volatility = stockServiceImpl.calculateVolatility(data, 5);
-                    data.setVolatility(volatility);
-                    double finalValue = stockServiceImpl.simulateSimpleMovingAverageStrategy(data, 5, 20);
-                    data.setStatusMessage("Simulated final portfolio value: " + finalValue);
-                }
-                results.put(symbol, data);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                StockData errorData = new StockData();
-                errorData.setSymbol(symbol);
-                errorData.setStatusMessage("Interrupted: " + e.getMessage());
-                results.put(symbol, errorData);
-            } catch (Exception e) {
-                StockData errorData = new StockData();
-                errorData.setSymbol(symbol);
-                errorData.setStatusMessage("Error: " + e.getMessage());
-                results.put(symbol, errorData);
-            }
-        });
-        return results;
+        AnalyticsRequest request = new AnalyticsRequest();
+        request.setSymbols(symbols);
+        return aggregate(request);
     }
 
     @Override
     public Map<String, StockData> fetchAndAggregate(List<String> symbols, int movingAveragePeriod, int volatilityPeriod, int shortMAPeriod, int longMAPeriod) {
+        return aggregate(new AnalyticsRequest(symbols, movingAveragePeriod, volatilityPeriod, shortMAPeriod, longMAPeriod, null, null));
+    }
+
+    @Override
+    public Map<String, StockData> fetchAndAggregateWithDateRange(List<String> symbols, int movingAveragePeriod, int volatilityPeriod, int shortMAPeriod, int longMAPeriod, LocalDate startDate, LocalDate endDate) {
+        return aggregate(new AnalyticsRequest(symbols, movingAveragePeriod, volatilityPeriod, shortMAPeriod, longMAPeriod, startDate, endDate));
+    }
+
+    private Map<String, StockData> aggregate(AnalyticsRequest request) {
         Map<String, Future<StockData>> futures = new ConcurrentHashMap<>();
         Map<String, StockData> results = new ConcurrentHashMap<>();
-        for (String symbol : symbols) {
-            futures.put(symbol, stockService.fetchStockData(symbol));
+        for (String symbol : request.getSymbols()) {
+            futures.put(symbol, analyzeAsync(symbol, request).thenApply(Analyzed::data));
         }
         futures.forEach((symbol, future) -> {
             try {
-                StockData data = future.get(30, TimeUnit.SECONDS);
-                if (data.getClosingPrices() == null || data.getClosingPrices().isEmpty()) {
-                    data.setStatusMessage("No data returned from API or symbol not found.");
-                    results.put(symbol, data);
-                    return;
-                }
-                // Calculate analytics with custom periods
-                List<Double> ma = stockService.calculateMovingAverage(data, movingAveragePeriod);
-                if (!ma.isEmpty()) data.setMovingAverage(ma.get(ma.size() - 1));
-                if (data.getClosingPrices().size() >= Math.max(movingAveragePeriod, volatilityPeriod)
-                    && stockService instanceof StockServiceImpl stockServiceImpl) {
-                    Double volatility = stockServiceImpl.calculateVolatility(data, volatilityPeriod);
-                    data.setVolatility(volatility);
-                    double finalValue = stockServiceImpl.simulateSimpleMovingAverageStrategy(data, shortMAPeriod, longMAPeriod);
-                    data.setStatusMessage("Simulated final portfolio value: " + finalValue);
-                    // Calculate EMA and RSI
-                    Double ema = stockServiceImpl.calculateEMA(data, movingAveragePeriod);
-                    data.setEma(ema);
-                    Double rsi = stockServiceImpl.calculateRSI(data, movingAveragePeriod);
-                    data.setRsi(rsi);
-                    // Calculate Bollinger Bands (using 2 stddev, same period as moving average)
-                    List<Double> upperBand = stockServiceImpl.calculateBollingerUpper(data, movingAveragePeriod, 2.0);
-                    List<Double> lowerBand = stockServiceImpl.calculateBollingerLower(data, movingAveragePeriod, 2.0);
-                    if (!upperBand.isEmpty()) data.setBollingerUpper(upperBand.get(upperBand.size() - 1));
-                    if (!lowerBand.isEmpty()) data.setBollingerLower(lowerBand.get(lowerBand.size() - 1));
-                    // Calculate MACD (12,26,9 standard periods)
-                    List<Double> macdLine = stockServiceImpl.calculateMACD(data, 12, 26);
-                    List<Double> macdSignal = stockServiceImpl.calculateMACDSignal(macdLine, 9);
-                    if (!macdLine.isEmpty()) data.setMacd(macdLine.get(macdLine.size() - 1));
-                    if (!macdSignal.isEmpty()) data.setMacdSignal(macdSignal.get(macdSignal.size() - 1));
-                }
-                results.put(symbol, data);
+                results.put(symbol, future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                StockData errorData = new StockData();
-                errorData.setSymbol(symbol);
-                errorData.setStatusMessage("Interrupted: " + e.getMessage());
-                results.put(symbol, errorData);
+                results.put(symbol, errorData(symbol, "Interrupted: " + e.getMessage()));
             } catch (Exception e) {
-                StockData errorData = new StockData();
-                errorData.setSymbol(symbol);
-                errorData.setStatusMessage("Error: " + e.getMessage());
-                results.put(symbol, errorData);
+                Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+                results.put(symbol, errorData(symbol, "Error: " + cause.getMessage()));
             }
         });
         return results;
     }
 
     @Override
-    public Map<String, StockData> fetchAndAggregateWithDateRange(List<String> symbols, int movingAveragePeriod, int volatilityPeriod, int shortMAPeriod, int longMAPeriod, LocalDate startDate, LocalDate endDate) {
-        Map<String, Future<StockData>> futures = new ConcurrentHashMap<>();
-        Map<String, StockData> results = new ConcurrentHashMap<>();
-        for (String symbol : symbols) {
-            futures.put(symbol, stockService.fetchStockData(symbol));
-        }
-        futures.forEach((symbol, future) -> {
-            try {
-                StockData data = future.get(30, TimeUnit.SECONDS);
-                if (data.getClosingPrices() == null || data.getClosingPrices().isEmpty()) {
-                    data.setStatusMessage("No data returned from API or symbol not found.");
-                    results.put(symbol, data);
-                    return;
-                }
-                // Filter closing prices by date range if provided
-                if (startDate != null && endDate != null) {
-                    Map<LocalDate, Double> filtered = new TreeMap<>();
-                    data.getClosingPrices().forEach((date, price) -> {
-                        if ((date.isEqual(startDate) || date.isAfter(startDate)) && (date.isEqual(endDate) || date.isBefore(endDate))) {
-                            filtered.put(date, price);
-                        }
-                    });
-                    data.setClosingPrices(filtered);
-                    // Add user-friendly message if no data in range
-                    if (filtered.isEmpty()) {
-                        data.setStatusMessage("No data available for the selected date range.");
-                        results.put(symbol, data);
-                        return;
-                    }
-                }
-                // Calculate analytics with custom periods
-                List<Double> ma = stockService.calculateMovingAverage(data, movingAveragePeriod);
-                if (!ma.isEmpty()) data.setMovingAverage(ma.get(ma.size() - 1));
-                if (data.getClosingPrices().size() >= Math.max(movingAveragePeriod, volatilityPeriod)
-                    && stockService instanceof StockServiceImpl stockServiceImpl) {
-                    Double volatility = stockServiceImpl.calculateVolatility(data, volatilityPeriod);
-                    data.setVolatility(volatility);
-                    double finalValue = stockServiceImpl.simulateSimpleMovingAverageStrategy(data, shortMAPeriod, longMAPeriod);
-                    data.setStatusMessage("Simulated final portfolio value: " + finalValue);
-                    // Calculate EMA and RSI
-                    Double ema = stockServiceImpl.calculateEMA(data, movingAveragePeriod);
-                    data.setEma(ema);
-                    Double rsi = stockServiceImpl.calculateRSI(data, movingAveragePeriod);
-                    data.setRsi(rsi);
-                    // Calculate Bollinger Bands (using 2 stddev, same period as moving average)
-                    List<Double> upperBand = stockServiceImpl.calculateBollingerUpper(data, movingAveragePeriod, 2.0);
-                    List<Double> lowerBand = stockServiceImpl.calculateBollingerLower(data, movingAveragePeriod, 2.0);
-                    if (!upperBand.isEmpty()) data.setBollingerUpper(upperBand.get(upperBand.size() - 1));
-                    if (!lowerBand.isEmpty()) data.setBollingerLower(lowerBand.get(lowerBand.size() - 1));
-                    // Calculate MACD (12,26,9 standard periods)
-                    List<Double> macdLine = stockServiceImpl.calculateMACD(data, 12, 26);
-                    List<Double> macdSignal = stockServiceImpl.calculateMACDSignal(macdLine, 9);
-                    if (!macdLine.isEmpty()) data.setMacd(macdLine.get(macdLine.size() - 1));
-                    if (!macdSignal.isEmpty()) data.setMacdSignal(macdSignal.get(macdSignal.size() - 1));
+    public void streamAggregate(AnalyticsRequest request, AnalysisListener listener) throws IOException {
+        streamAggregate(request, streamWindow, listener);
+    }
+
+    @Override
+    public void streamAggregate(AnalyticsRequest request, int window, AnalysisListener listener) throws IOException {
+        BlockingQueue<Analyzed> completed = new LinkedBlockingQueue<>();
+        Iterator<String> symbols = request.getSymbols().iterator();
+        int running = 0;
+        try {
+            while (running > 0 || symbols.hasNext()) {
+                // Keep a window of symbols in flight so memory stays flat however many are exported
+                while (running < Math.max(1, window) && symbols.hasNext()) {
+                    String symbol = symbols.next();
+                    analyzeAsync(symbol, request)
+                            .orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .whenComplete((analyzed, error) -> completed.add(analyzed != null ? analyzed
+                                    : new Analyzed(errorData(symbol, "Error: " + rootCause(error).getMessage()), null)));
+                    running++;
                 }
-                results.put(symbol, data);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                StockData errorData = new StockData();
-                errorData.setSymbol(symbol);
-                errorData.setStatusMessage("Interrupted: " + e.getMessage());
-                results.put(symbol, errorData);
-            } catch (Exception e) {
-                StockData errorData = new StockData();
-                errorData.setSymbol(symbol);
-                errorData.setStatusMessage("Error: " + e.getMessage());
-                results.put(symbol, errorData);
+                Analyzed next = completed.take();
+                running--;
+                listener.onAnalyzed(next.data(), next.history());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming analytics");
+        }
+    }
+
+    /**
+     * Fetches and analyzes one symbol; the indicator pass runs on the indicator pool and the
+     * indicator state lookups on the I/O pool.
+     */
+    private CompletableFuture<Analyzed> analyzeAsync(String symbol, AnalyticsRequest request) {
+        boolean dateRange = request.getStartDate() != null && request.getEndDate() != null;
+        // Ranges are pushed down to the store, together with the indicators' look-back bars
+        CompletableFuture<StockData> fetch = dateRange
+                ? stockService.fetchStockData(symbol, request.getStartDate(), request.getEndDate(), IndicatorEngine.warmUpBars(request))
+                : stockService.fetchStockData(symbol);
+        return fetch.thenCompose(data -> {
+            PriceSeries history = data.getClosingPrices();
+            if (history == null || history.isEmpty()) {
+                data.setStatusMessage("No data returned from API or symbol not found.");
+                return CompletableFuture.completedFuture(new Analyzed(data, history));
+            }
+            if (dateRange) {
+                return CompletableFuture.supplyAsync(() -> new Analyzed(analyzeRange(data, request), history), indicatorExecutorService);
             }
+            // Latest-value analytics cover the whole stored history from its first bar, so one
+            // state per parameter set serves every request and the nightly update moves it on
+            return CompletableFuture.supplyAsync(() -> resume(symbol, request, history), executorService)
+                    .thenApplyAsync(resumed -> {
+                        IndicatorState state = resumed.state();
+                        boolean advanced = IndicatorEngine.foldNewer(state, resumed.missing()) > 0;
+                        advanced |= IndicatorEngine.foldNewer(state, history) > 0;
+                        state.writeTo(data);
+                        return advanced ? state : null;
+                    }, indicatorExecutorService)
+                    .thenApplyAsync(advanced -> {
+                        if (advanced != null) indicatorStateStore.save(advanced);
+                        return new Analyzed(data, history);
+                    }, executorService);
         });
-        return results;
+    }
+
+    /**
+     * Looks up the stored state for the latest-value analytics. A missing state is seeded from the
+     * first stored bar, and one that has fallen behind {@code window} is given the stored bars in
+     * between; the full history is only read the first time.
+     */
+    private Resumed resume(String symbol, AnalyticsRequest request, PriceSeries window) {
+        IndicatorState state = indicatorStateStore.find(symbol, request);
+        if (state != null && IndicatorEngine.reaches(state, window)) {
+            return new Resumed(state, null);
+        }
+        if (state == null) {
+            state = new IndicatorState(symbol, request);
+        }
+        LocalDate after = state.getBarCount() > 0 ? LocalDate.ofEpochDay(state.getLastEpochDay() + 1L) : null;
+        return new Resumed(state, priceHistoryStore.load(symbol, after, null));
+    }
+
+    private StockData analyzeRange(StockData data, AnalyticsRequest request) {
+        PriceSeries inRange = data.getClosingPrices().between(request.getStartDate(), request.getEndDate());
+        // Add user-friendly message if no data in range
+        if (inRange.isEmpty()) {
+            data.setClosingPrices(inRange);
+            data.setStatusMessage("No data available for the selected date range.");
+            return data;
+        }
+        // Indicators run over the warm-up bars too, but the backtest only trades within the
+        // range; only the requested range is returned
+        indicatorEngine.apply(data, request, request.getStartDate());
+        data.setClosingPrices(inRange);
+        return data;
+    }
+
+    private static StockData errorData(String symbol, String message) {
+        StockData errorData = new StockData();
+        errorData.setSymbol(symbol);
+        errorData.setStatusMessage(message);
+        return errorData;
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 }
@@ -0,0 +1,136 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.repository.DailyBarRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Daily bars kept in the {@code daily_bar} table. Bulk reads decode rows straight into the
+ * primitive arrays of a {@link PriceSeries}, and appends go out as one JDBC batch.
+ */
+@Service
+@ConditionalOnProperty(name = "stockmarket.price-store.type", havingValue = "database", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DatabasePriceHistoryStore implements PriceHistoryStore {
+    private static final Logger log = LoggerFactory.getLogger(DatabasePriceHistoryStore.class);
+
+    private static final String INSERT_SQL =
+            "insert into daily_bar (symbol, trade_date, close_price) values (?, ?, ?) on conflict (symbol, trade_date) do nothing";
+    private static final String SELECT_RANGE_SQL =
+            "select trade_date, close_price from daily_bar where symbol = ? and trade_date between ? and ? order by trade_date";
+    private static final String SELECT_RANGE_WITH_WARM_UP_SQL =
+            "select trade_date, close_price from ("
+                    + "(select trade_date, close_price from daily_bar where symbol = ? and trade_date < ? order by trade_date desc limit ?)"
+                    + " union all "
+                    + "(select trade_date, close_price from daily_bar where symbol = ? and trade_date between ? and ?)"
+                    + ") bars order by trade_date";
+    private static final String SELECT_LATEST_SQL =
+            "select trade_date, close_price from daily_bar where symbol = ? order by trade_date desc limit ?";
+
+    private final DailyBarRepository dailyBarRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public LocalDate latestDate(String symbol) {
+        return dailyBarRepository.findLatestTradeDate(symbol.toUpperCase());
+    }
+
+    @Override
+    public Map<String, LocalDate> latestDates(Collection<String> symbols) {
+        Set<String> upper = new HashSet<>();
+        symbols.forEach(symbol -> upper.add(symbol.toUpperCase()));
+        Map<String, LocalDate> latest = new HashMap<>();
+        if (upper.isEmpty()) return latest;
+        for (Object[] row : dailyBarRepository.findLatestTradeDates(upper)) {
+            latest.put((String) row[0], (LocalDate) row[1]);
+        }
+        return latest;
+    }
+
+    @Override
+    public PriceSeries load(String symbol, LocalDate from, LocalDate to) {
+        Date lower = Date.valueOf(from != null ? from : LocalDate.of(1900, 1, 1));
+        Date upper = Date.valueOf(to != null ? to : LocalDate.of(9999, 12, 31));
+        return jdbcTemplate.query(SELECT_RANGE_SQL, (ResultSetExtractor<PriceSeries>) rs -> readSeries(rs, false), symbol.toUpperCase(), lower, upper);
+    }
+
+    @Override
+    public PriceSeries load(String symbol, LocalDate from, LocalDate to, int warmUpBars) {
+        if (from == null) return load(symbol, null, to);
+        String key = symbol.toUpperCase();
+        Date lower = Date.valueOf(from);
+        Date upper = Date.valueOf(to != null ? to : LocalDate.of(9999, 12, 31));
+        return jdbcTemplate.query(SELECT_RANGE_WITH_WARM_UP_SQL, (ResultSetExtractor<PriceSeries>) rs -> readSeries(rs, false),
+                key, lower, warmUpBars, key, lower, upper);
+    }
+
+    @Override
+    public PriceSeries loadLatest(String symbol, int bars) {
+        return jdbcTemplate.query(SELECT_LATEST_SQL, (ResultSetExtractor<PriceSeries>) rs -> readSeries(rs, true), symbol.toUpperCase(), bars);
+    }
+
+    @Override
+    public void append(String symbol, PriceSeries bars) {
+        if (bars.isEmpty()) return;
+        String key = symbol.toUpperCase();
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int index) throws SQLException {
+                ps.setString(1, key);
+                ps.setDate(2, Date.valueOf(bars.dateAt(index)));
+                ps.setDouble(3, bars.closeAt(index));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return bars.size();
+            }
+        });
+        log.info("Stored {} daily bar(s) for {} up to {}", bars.size(), key, bars.lastDate());
+    }
+
+    private static PriceSeries readSeries(ResultSet rs, boolean descending) throws SQLException {
+        int[] days = new int[64];
+        double[] closes = new double[64];
+        int n = 0;
+        while (rs.next()) {
+            if (n == days.length) {
+                days = Arrays.copyOf(days, n * 2);
+                closes = Arrays.copyOf(closes, n * 2);
+            }
+            days[n] = (int) rs.getDate(1).toLocalDate().toEpochDay();
+            closes[n] = rs.getDouble(2);
+            n++;
+        }
+        if (descending) {
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                int day = days[i];
+                days[i] = days[j];
+                days[j] = day;
+                double close = closes[i];
+                closes[i] = closes[j];
+                closes[j] = close;
+            }
+        }
+        return PriceSeries.of(days, closes, n);
+    }
+}
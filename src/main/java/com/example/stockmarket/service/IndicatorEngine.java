@@ -0,0 +1,105 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.model.StockData;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Computes the full indicator set for a series in a single pass over its closes and writes
+ * the latest values straight into the {@link StockData}. Results match the individual
+ * {@link StockServiceImpl} calculate methods.
+ */
+@Component
+public class IndicatorEngine {
+    static final double BOLLINGER_STD_DEVS = 2.0;
+    static final int MACD_SHORT_PERIOD = 12;
+    static final int MACD_LONG_PERIOD = 26;
+    static final int MACD_SIGNAL_PERIOD = 9;
+    static final double INITIAL_CASH = 10000.0;
+
+    /** Bars needed before the first reported bar so every indicator's look-back window is filled. */
+    public static int warmUpBars(AnalyticsRequest request) {
+        return Math.max(Math.max(request.getMovingAveragePeriod() + 1, request.getVolatilityPeriod()),
+                Math.max(request.getLongMAPeriod(), MACD_LONG_PERIOD + MACD_SIGNAL_PERIOD));
+    }
+
+    /** Receives the indicator values as of one bar. */
+    @FunctionalInterface
+    public interface BarListener {
+        void onBar(LocalDate date, double close, StockData values) throws IOException;
+    }
+
+    /**
+     * Replays {@code prices} through a fresh state and reports the indicator values as of every
+     * bar dated on or after {@code from} ({@code null} reports all). Earlier bars only warm the
+     * windows up and the backtest starts trading at {@code from}. Values a bar does not have
+     * enough history for are left {@code null}.
+     */
+    public static void forEachBar(String symbol, PriceSeries prices, AnalyticsRequest request, LocalDate from,
+                                  BarListener listener) throws IOException {
+        if (prices == null || prices.isEmpty()) return;
+        IndicatorState state = new IndicatorState(symbol, request, from);
+        int fromDay = from != null ? (int) from.toEpochDay() : Integer.MIN_VALUE;
+        for (int i = 0; i < prices.size(); i++) {
+            int day = prices.epochDayAt(i);
+            double close = prices.closeAt(i);
+            state.advance(day, close);
+            if (day < fromDay) continue;
+            StockData values = new StockData();
+            values.setSymbol(symbol);
+            values.setLatestPrice(close);
+            state.writeTo(values);
+            listener.onBar(LocalDate.ofEpochDay(day), close, values);
+        }
+    }
+
+    public void apply(StockData data, AnalyticsRequest request) {
+        apply(data, request, (LocalDate) null);
+    }
+
+    /**
+     * Replays the whole series from a fresh state, with the backtest trading only from the first
+     * bar dated on or after {@code tradeFrom}; earlier bars just warm the indicator windows up.
+     */
+    public void apply(StockData data, AnalyticsRequest request, LocalDate tradeFrom) {
+        PriceSeries prices = data.getClosingPrices();
+        if (prices == null || prices.isEmpty()) return;
+        IndicatorState state = new IndicatorState(data.getSymbol(), request, tradeFrom);
+        for (int i = 0; i < prices.size(); i++) {
+            state.advance(prices.epochDayAt(i), prices.closeAt(i));
+        }
+        state.writeTo(data);
+    }
+
+    /**
+     * Whether {@code state} can be brought up to date from {@code prices} alone: it has folded in
+     * at least one bar and its last bar is either part of the series or not older than it, so no
+     * bar between the two is missing.
+     */
+    public static boolean reaches(IndicatorState state, PriceSeries prices) {
+        if (state.getBarCount() == 0) return false;
+        if (prices == null || prices.isEmpty()) return true;
+        return state.getLastEpochDay() >= prices.epochDayAt(prices.size() - 1)
+                || prices.indexOf(LocalDate.ofEpochDay(state.getLastEpochDay())) >= 0;
+    }
+
+    /**
+     * Folds the bars of {@code prices} dated after the state's last bar into {@code state}.
+     *
+     * @return the number of bars folded in
+     */
+    public static int foldNewer(IndicatorState state, PriceSeries prices) {
+        if (prices == null || prices.isEmpty()) return 0;
+        PriceSeries newer = state.getBarCount() > 0
+                ? prices.between(LocalDate.ofEpochDay(state.getLastEpochDay() + 1L), null)
+                : prices;
+        for (int i = 0; i < newer.size(); i++) {
+            state.advance(newer.epochDayAt(i), newer.closeAt(i));
+        }
+        return newer.size();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.StockData;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Running indicator state for one symbol and one set of analytics periods. Every indicator
+ * is either recursive (EMA, Wilder RSI, MACD and signal, the crossover backtest) or windowed
+ * over a bounded number of recent closes, so {@link #advance(int, double)} moves the whole
+ * set forward by one bar in constant time regardless of how much history came before it.
+ * The crossover backtest can be held back to a later start day: bars before it fill the
+ * indicator windows but neither trade nor count towards the backtest's own windows.
+ * <p>
+ * The recursive indicators and the backtest are seeded by the first bar folded in, so a state
+ * only stands in for a replay of a series that starts at that same bar. Stored states always
+ * start at the symbol's first stored bar and are only ever moved forward bar by bar.
+ */
+@Getter
+public class IndicatorState implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 4L;
+
+    private final String symbol;
+    private final int movingAveragePeriod;
+    private final int volatilityPeriod;
+    private final int shortMAPeriod;
+    private final int longMAPeriod;
+    private final int tradeFromEpochDay;
+
+    private int barCount;
+    private int tradedBars;
+    private int firstEpochDay;
+    private int lastEpochDay;
+    private double lastClose;
+    private double ema;
+    private double avgGain;
+    private double avgLoss;
+    private double macdShortEma;
+    private double macdLongEma;
+    private double macdSignal;
+    private double cash = IndicatorEngine.INITIAL_CASH;
+    private double shares;
+
+    @Getter(AccessLevel.NONE)
+    private final RollingStats maWindow;
+    @Getter(AccessLevel.NONE)
+    private final RollingStats volatilityWindow;
+    @Getter(AccessLevel.NONE)
+    private final RollingStats shortWindow;
+    @Getter(AccessLevel.NONE)
+    private final RollingStats longWindow;
+
+    public IndicatorState(String symbol, AnalyticsRequest request) {
+        this(symbol, request, null);
+    }
+
+    /** A state whose backtest trades from the first bar dated on or after {@code tradeFrom}. */
+    public IndicatorState(String symbol, AnalyticsRequest request, LocalDate tradeFrom) {
+        this.symbol = symbol;
+        this.movingAveragePeriod = request.getMovingAveragePeriod();
+        this.volatilityPeriod = request.getVolatilityPeriod();
+        this.shortMAPeriod = request.getShortMAPeriod();
+        this.longMAPeriod = request.getLongMAPeriod();
+        this.tradeFromEpochDay = tradeFrom != null ? (int) tradeFrom.toEpochDay() : Integer.MIN_VALUE;
+        this.maWindow = new RollingStats(movingAveragePeriod);
+        this.volatilityWindow = new RollingStats(volatilityPeriod);
+        this.shortWindow = new RollingStats(shortMAPeriod);
+        this.longWindow = new RollingStats(longMAPeriod);
+    }
+
+    /** Identifies the parameter set this state was built for. */
+    public static String parameterKey(AnalyticsRequest request) {
+        return request.getMovingAveragePeriod() + ":" + request.getVolatilityPeriod() + ":"
+                + request.getShortMAPeriod() + ":" + request.getLongMAPeriod();
+    }
+
+    public String parameterKey() {
+        return movingAveragePeriod + ":" + volatilityPeriod + ":" + shortMAPeriod + ":" + longMAPeriod;
+    }
+
+    /**
+     * Folds in the close for {@code epochDay}. Bars at or before the last folded day are
+     * ignored, so replaying an update is harmless.
+     */
+    public boolean advance(int epochDay, double close) {
+        if (barCount > 0 && epochDay <= lastEpochDay) return false;
+        int i = barCount;
+
+        // SMA crossover: windows end at the previous bar, trade at this bar's close
+        if (epochDay >= tradeFromEpochDay) {
+            if (tradedBars >= longMAPeriod) {
+                double shortMA = shortWindow.mean();
+                double longMA = longWindow.mean();
+                if (shortMA > longMA && cash >= close) {
+                    shares = cash / close;
+                    cash = 0;
+                } else if (shortMA < longMA && shares > 0) {
+                    cash = shares * close;
+                    shares = 0;
+                }
+            }
+            shortWindow.add(close);
+            longWindow.add(close);
+            tradedBars++;
+        }
+        maWindow.add(close);
+        volatilityWindow.add(close);
+
+        if (i == 0) {
+            firstEpochDay = epochDay;
+            ema = close;
+            macdShortEma = close;
+            macdLongEma = close;
+        } else {
+            ema = (close - ema) * (2.0 / (movingAveragePeriod + 1)) + ema;
+            macdShortEma = (close - macdShortEma) * (2.0 / (IndicatorEngine.MACD_SHORT_PERIOD + 1)) + macdShortEma;
+            macdLongEma = (close - macdLongEma) * (2.0 / (IndicatorEngine.MACD_LONG_PERIOD + 1)) + macdLongEma;
+            macdSignal = ((macdShortEma - macdLongEma) - macdSignal) * (2.0 / (IndicatorEngine.MACD_SIGNAL_PERIOD + 1)) + macdSignal;
+
+            // RSI: simple average over the first period, Wilder smoothing afterwards
+            double diff = close - lastClose;
+            double gain = diff >= 0 ? diff : 0;
+            double loss = diff >= 0 ? 0 : -diff;
+            if (i < movingAveragePeriod) {
+                avgGain += gain;
+                avgLoss += loss;
+            } else if (i == movingAveragePeriod) {
+                avgGain = (avgGain + gain) / movingAveragePeriod;
+                avgLoss = (avgLoss + loss) / movingAveragePeriod;
+            } else {
+                avgGain = (avgGain * (movingAveragePeriod - 1) + gain) / movingAveragePeriod;
+                avgLoss = (avgLoss * (movingAveragePeriod - 1) + loss) / movingAveragePeriod;
+            }
+        }
+        barCount++;
+        lastEpochDay = epochDay;
+        lastClose = close;
+        return true;
+    }
+
+    /** Writes the latest indicator values into {@code data}. */
+    public void writeTo(StockData data) {
+        int n = barCount;
+        if (n >= movingAveragePeriod) {
+            data.setMovingAverage(maWindow.mean());
+        }
+        if (n < Math.max(movingAveragePeriod, volatilityPeriod)) return;
+
+        data.setVolatility(volatilityWindow.standardDeviation());
+        double finalValue = 0.0;
+        if (tradedBars >= longMAPeriod) {
+            // Liquidate at last price
+            finalValue = shares > 0 ? shares * lastClose : cash;
+        }
+        data.setStatusMessage("Simulated final portfolio value: " + finalValue);
+        data.setEma(ema);
+        if (n > movingAveragePeriod) {
+            data.setRsi(avgLoss == 0 ? 100.0 : 100 - (100 / (1 + avgGain / avgLoss)));
+        }
+        double mean = maWindow.mean();
+        double std = maWindow.standardDeviation();
+        data.setBollingerUpper(mean + IndicatorEngine.BOLLINGER_STD_DEVS * std);
+        data.setBollingerLower(mean - IndicatorEngine.BOLLINGER_STD_DEVS * std);
+        data.setMacd(macdShortEma - macdLongEma);
+        data.setMacdSignal(macdSignal);
+    }
+}
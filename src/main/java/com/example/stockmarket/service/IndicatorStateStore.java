@@ -0,0 +1,72 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.util.TradingCalendar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Keeps {@link IndicatorState}s in Redis, one hash per symbol with a field per parameter set.
+ * Redis failures are logged and treated as a miss so analytics reseed from the stored history.
+ */
+@Component
+public class IndicatorStateStore {
+    private static final Logger log = LoggerFactory.getLogger(IndicatorStateStore.class);
+    private static final String KEY_PREFIX = "indicator-state:";
+
+    private final HashOperations<String, String, IndicatorState> hashOperations;
+
+    public IndicatorStateStore(RedisTemplate<String, IndicatorState> indicatorStateRedisTemplate) {
+        this.hashOperations = indicatorStateRedisTemplate.opsForHash();
+    }
+
+    public IndicatorState find(String symbol, AnalyticsRequest request) {
+        try {
+            return hashOperations.get(key(symbol), IndicatorState.parameterKey(request));
+        } catch (Exception e) {
+            log.warn("Failed to read indicator state for {}: {}", symbol, e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(IndicatorState state) {
+        try {
+            hashOperations.put(key(state.getSymbol()), state.parameterKey(), state);
+        } catch (Exception e) {
+            log.warn("Failed to save indicator state for {}: {}", state.getSymbol(), e.getMessage());
+        }
+    }
+
+    /**
+     * Advances every stored parameter set of {@code symbol} by the close recorded for {@code date}
+     * and returns the states that moved, keyed by parameter key. A state whose last bar is older
+     * than the session before {@code date} is left alone, since folding in this close would skip
+     * the bars in between; the next analytics request catches it up from the price store.
+     */
+    public Map<String, IndicatorState> advance(String symbol, LocalDate date, double close) {
+        try {
+            Map<String, IndicatorState> states = hashOperations.entries(key(symbol));
+            long previousSession = TradingCalendar.previousSession(date).toEpochDay();
+            states.values().removeIf(state -> state.getLastEpochDay() < previousSession
+                    || !state.advance((int) date.toEpochDay(), close));
+            if (!states.isEmpty()) {
+                hashOperations.putAll(key(symbol), states);
+                log.info("Advanced {} indicator state(s) for {} to {}", states.size(), symbol, date);
+            }
+            return states;
+        } catch (Exception e) {
+            log.warn("Failed to advance indicator state for {}: {}", symbol, e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private static String key(String symbol) {
+        return KEY_PREFIX + symbol.toUpperCase();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.stockmarket.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide leases in Redis. A lease is a key set with {@code SET NX PX} to this node's token;
+ * while held it is renewed every third of its TTL, and it is released with a compare-and-delete
+ * so a node never frees a lease that expired and was taken over by another node. If the holder
+ * dies, renewal stops and the key expires, letting another node acquire it.
+ */
+@Component
+public class LeaseManager {
+    private static final Logger log = LoggerFactory.getLogger(LeaseManager.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lease-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LeaseManager(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /** A held lease; closing it stops renewal and releases the key if this node still owns it. */
+    public final class Lease implements AutoCloseable {
+        private final String key;
+        private final ScheduledFuture<?> renewal;
+        private volatile boolean lost;
+
+        private Lease(String key, Duration ttl) {
+            this.key = key;
+            long period = Math.max(1, ttl.toMillis() / 3);
+            this.renewal = renewer.scheduleAtFixedRate(() -> renew(ttl), period, period, TimeUnit.MILLISECONDS);
+        }
+
+        /** True once a renewal found the key gone or owned by another node. */
+        public boolean isLost() {
+            return lost;
+        }
+
+        private void renew(Duration ttl) {
+            try {
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(key), nodeId, String.valueOf(ttl.toMillis()));
+                if (renewed == null || renewed == 0) {
+                    lost = true;
+                    renewal.cancel(false);
+                    log.warn("Lost lease {}", key);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to renew lease {}: {}", key, e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            renewal.cancel(false);
+            try {
+                redisTemplate.execute(RELEASE_SCRIPT, List.of(key), nodeId);
+            } catch (Exception e) {
+                log.warn("Failed to release lease {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /** Acquires {@code key} for {@code ttl}, or returns {@code null} when another node holds it. */
+    public Lease tryAcquire(String key, Duration ttl) {
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(key, nodeId, ttl);
+        return Boolean.TRUE.equals(acquired) ? new Lease(key, ttl) : null;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renewer.shutdownNow();
+    }
+}
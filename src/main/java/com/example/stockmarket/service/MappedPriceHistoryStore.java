@@ -0,0 +1,238 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Daily bars kept in one append-only, memory-mapped file per symbol, so every analyzer
+ * process on a host shares the same pages through the OS page cache instead of holding its
+ * own heap copy. Series are returned as zero-copy views over the mapping.
+ *
+ * <p>File layout (little endian): a 64-byte header, then the epoch-day column
+ * ({@code int[capacity]}, padded to 8 bytes), then the close column ({@code double[capacity]}).
+ * The header carries the bar count and the first/last dates, so freshness checks read only the
+ * header and date lookups binary-search the day column. Writers hold an exclusive
+ * {@link FileLock} on a sibling {@code .lock} file, write the new bars first and publish them by
+ * bumping the count last. When a file runs out of capacity it is rewritten with double the room,
+ * atomically moved into place, and the old file is flagged as superseded so other processes
+ * remap. The lock file is never replaced, so the lock stays valid across a grow.
+ */
+@Service
+@ConditionalOnProperty(name = "stockmarket.price-store.type", havingValue = "mmap")
+public class MappedPriceHistoryStore implements PriceHistoryStore {
+    private static final Logger log = LoggerFactory.getLogger(MappedPriceHistoryStore.class);
+
+    private static final int MAGIC = 0x53504246; // "SPBF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int FIRST_DAY_OFFSET = 16;
+    private static final int LAST_DAY_OFFSET = 20;
+    private static final int FLAGS_OFFSET = 24;
+    private static final int FLAG_SUPERSEDED = 1;
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final Path directory;
+    private final Map<String, Mapping> mappings = new ConcurrentHashMap<>();
+
+    public MappedPriceHistoryStore(@Value("${stockmarket.price-store.mmap-directory}") String directory) throws IOException {
+        this.directory = Files.createDirectories(Path.of(directory));
+        log.info("Using memory-mapped price history store in {}", this.directory);
+    }
+
+    @Override
+    public LocalDate latestDate(String symbol) {
+        Mapping mapping = mapping(symbol);
+        if (mapping == null) return null;
+        int count = mapping.header().getInt(COUNT_OFFSET);
+        return count > 0 ? LocalDate.ofEpochDay(mapping.header().getInt(LAST_DAY_OFFSET)) : null;
+    }
+
+    @Override
+    public PriceSeries load(String symbol, LocalDate from, LocalDate to) {
+        return series(symbol).between(from, to);
+    }
+
+    @Override
+    public PriceSeries load(String symbol, LocalDate from, LocalDate to, int warmUpBars) {
+        if (from == null) return load(symbol, null, to);
+        PriceSeries series = series(symbol);
+        int index = series.indexOf(from);
+        int start = index >= 0 ? index : -index - 1;
+        PriceSeries range = series.slice(Math.max(0, start - warmUpBars), series.size());
+        return to != null ? range.between(null, to) : range;
+    }
+
+    @Override
+    public PriceSeries loadLatest(String symbol, int bars) {
+        return series(symbol).tail(bars);
+    }
+
+    @Override
+    public void append(String symbol, PriceSeries bars) {
+        if (bars.isEmpty()) return;
+        String key = symbol.toUpperCase();
+        Path file = file(key);
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock();
+             // Opened under the lock, so this is the current file even if another process grew it
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                // New, or cut short before its header was written; no bar was ever published
+                channel.truncate(0);
+                initialize(channel, Math.max(INITIAL_CAPACITY, bars.size()));
+            }
+            MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE);
+            int appended = appendLocked(file, buffer, bars);
+            if (appended > 0) {
+                log.info("Stored {} daily bar(s) for {} up to {}", appended, key, bars.lastDate());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append bars for " + key, e);
+        }
+    }
+
+    private int appendLocked(Path file, MappedByteBuffer buffer, PriceSeries bars) throws IOException {
+        int count = buffer.getInt(COUNT_OFFSET);
+        int lastDay = count > 0 ? buffer.getInt(LAST_DAY_OFFSET) : Integer.MIN_VALUE;
+        int from = 0;
+        while (from < bars.size() && bars.epochDayAt(from) <= lastDay) {
+            from++;
+        }
+        int newBars = bars.size() - from;
+        if (newBars == 0) return 0;
+
+        int capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (count + newBars > capacity) {
+            buffer = grow(file, buffer, Math.max(capacity * 2, count + newBars));
+            capacity = buffer.getInt(CAPACITY_OFFSET);
+        }
+        int closesOffset = closesOffset(capacity);
+        for (int i = 0; i < newBars; i++) {
+            buffer.putInt(HEADER_BYTES + (count + i) * Integer.BYTES, bars.epochDayAt(from + i));
+            buffer.putDouble(closesOffset + (count + i) * Double.BYTES, bars.closeAt(from + i));
+        }
+        if (count == 0) {
+            buffer.putInt(FIRST_DAY_OFFSET, bars.epochDayAt(from));
+        }
+        buffer.putInt(LAST_DAY_OFFSET, bars.epochDayAt(bars.size() - 1));
+        // Publish last: readers only look at the first `count` rows
+        buffer.putInt(COUNT_OFFSET, count + newBars);
+        buffer.force();
+        return newBars;
+    }
+
+    private MappedByteBuffer grow(Path file, MappedByteBuffer old, int capacity) throws IOException {
+        int count = old.getInt(COUNT_OFFSET);
+        int oldClosesOffset = closesOffset(old.getInt(CAPACITY_OFFSET));
+        Path temp = file.resolveSibling(file.getFileName() + ".grow");
+        MappedByteBuffer grown;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            initialize(channel, capacity);
+            grown = map(channel, FileChannel.MapMode.READ_WRITE);
+            int closesOffset = closesOffset(capacity);
+            for (int i = 0; i < count; i++) {
+                grown.putInt(HEADER_BYTES + i * Integer.BYTES, old.getInt(HEADER_BYTES + i * Integer.BYTES));
+                grown.putDouble(closesOffset + i * Double.BYTES, old.getDouble(oldClosesOffset + i * Double.BYTES));
+            }
+            grown.putInt(FIRST_DAY_OFFSET, old.getInt(FIRST_DAY_OFFSET));
+            grown.putInt(LAST_DAY_OFFSET, old.getInt(LAST_DAY_OFFSET));
+            grown.putInt(COUNT_OFFSET, count);
+            grown.force();
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        old.putInt(FLAGS_OFFSET, old.getInt(FLAGS_OFFSET) | FLAG_SUPERSEDED);
+        old.force();
+        log.info("Grew price file {} to {} bars", file.getFileName(), capacity);
+        return grown;
+    }
+
+    private PriceSeries series(String symbol) {
+        Mapping mapping = mapping(symbol);
+        if (mapping == null) return PriceSeries.empty();
+        return PriceSeries.wrap(mapping.days(), mapping.closes(), mapping.header().getInt(COUNT_OFFSET));
+    }
+
+    private Mapping mapping(String symbol) {
+        String key = symbol.toUpperCase();
+        Mapping mapping = mappings.get(key);
+        if (mapping != null && (mapping.header().getInt(FLAGS_OFFSET) & FLAG_SUPERSEDED) == 0) {
+            return mapping;
+        }
+        Path file = file(key);
+        if (!Files.exists(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) return null;
+            MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_ONLY);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IllegalStateException("Unrecognized price file: " + file);
+            }
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            ByteBuffer days = buffer.slice(HEADER_BYTES, capacity * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer closes = buffer.slice(closesOffset(capacity), capacity * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            mapping = new Mapping(buffer, days.asIntBuffer(), closes.asDoubleBuffer());
+            mappings.put(key, mapping);
+            return mapping;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map price file " + file, e);
+        }
+    }
+
+    private static void initialize(FileChannel channel, int capacity) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(CAPACITY_OFFSET, capacity);
+        channel.write(header, 0);
+        // Extend the file to its full size so the whole capacity can be mapped
+        channel.write(ByteBuffer.allocate(1), fileSize(capacity) - 1);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, 0, channel.size());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int closesOffset(int capacity) {
+        int daysBytes = capacity * Integer.BYTES;
+        return HEADER_BYTES + ((daysBytes + 7) & ~7);
+    }
+
+    private static long fileSize(int capacity) {
+        return closesOffset(capacity) + (long) capacity * Double.BYTES;
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key.replaceAll("[^A-Z0-9.\\-]", "_") + ".bars");
+    }
+
+    private record Mapping(MappedByteBuffer header, IntBuffer days, DoubleBuffer closes) {
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.config.AlphaVantageConfig;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Shared Alpha Vantage client. Requests go through the {@link MarketDataScheduler} and are sent
+ * asynchronously on one pooled {@link HttpClient}, so connections (HTTP/2 where offered) are
+ * reused across symbols and no thread waits on the socket. Response bodies are handed to a
+ * {@link ResponseParser} on the upstream executor as a stream.
+ */
+@Component
+public class MarketDataClient {
+    private static final String NOTE_KEY = "Note";
+    private static final String INFORMATION_KEY = "Information";
+    private static final int TOO_MANY_REQUESTS = 429;
+    // Throttling notices talk about call frequency or limits; others (invalid key, premium
+    // endpoint) will not go away by waiting
+    private static final Pattern RATE_LIMIT_NOTICE = Pattern.compile(
+            "rate limit|call frequency|(calls|requests) per (second|minute|day)", Pattern.CASE_INSENSITIVE);
+
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        /** Parses a response body; may throw {@link MarketDataScheduler.RateLimitedException}. */
+        T parse(InputStream body) throws IOException;
+    }
+
+    private final AlphaVantageConfig config;
+    private final HttpClient httpClient;
+    private final MarketDataScheduler scheduler;
+    private final ExecutorService parseExecutor;
+    private final ObjectMapper objectMapper;
+
+    public MarketDataClient(AlphaVantageConfig config, HttpClient marketDataHttpClient, MarketDataScheduler scheduler,
+                            @Qualifier("upstreamExecutorService") ExecutorService parseExecutor, ObjectMapper objectMapper) {
+        this.config = config;
+        this.httpClient = marketDataHttpClient;
+        this.scheduler = scheduler;
+        this.parseExecutor = parseExecutor;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Calls {@code function} with the given extra query parameters and decodes the body with {@code parser}. */
+    public <T> CompletableFuture<T> query(MarketDataScheduler.Priority priority, String function, Map<String, String> params,
+                                          ResponseParser<T> parser) {
+        Map<String, String> query = new LinkedHashMap<>();
+        query.put("function", function);
+        query.putAll(params);
+        query.put("apikey", config.getApiKey());
+        HttpRequest request = HttpRequest.newBuilder(uri(query))
+                .timeout(Duration.ofMillis(config.getReadTimeoutMillis()))
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return scheduler.submit(priority, () -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenCompose(response -> read(response, parser)));
+    }
+
+    /**
+     * Parses the body on the upstream executor. The request timeout only covers the headers, so
+     * the body gets the read timeout too; when it runs out the stream is closed, which also
+     * releases the thread blocked reading it.
+     */
+    private <T> CompletableFuture<T> read(HttpResponse<InputStream> response, ResponseParser<T> parser) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try (InputStream body = response.body()) {
+                        if (response.statusCode() == TOO_MANY_REQUESTS) {
+                            throw new MarketDataScheduler.RateLimitedException("HTTP 429 from Alpha Vantage");
+                        }
+                        if (response.statusCode() != 200) {
+                            throw new IOException("Alpha Vantage returned HTTP " + response.statusCode());
+                        }
+                        return parser.parse(body);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, parseExecutor)
+                .orTimeout(config.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    if (error instanceof TimeoutException) {
+                        try {
+                            response.body().close();
+                        } catch (IOException ignored) {
+                            // The read is abandoned either way
+                        }
+                    }
+                });
+    }
+
+    /** Calls {@code function} and returns the whole JSON object, failing on notices. */
+    public CompletableFuture<Map<String, Object>> queryJson(MarketDataScheduler.Priority priority, String function,
+                                                            Map<String, String> params) {
+        return query(priority, function, params, body -> {
+            Map<String, Object> response = objectMapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+            checkNotice(response);
+            return response;
+        });
+    }
+
+    /**
+     * Fails if a JSON response is a notice instead of data: with a
+     * {@link MarketDataScheduler.RateLimitedException} when it asks to slow down, so the call is
+     * retried, and with an {@link IOException} otherwise.
+     */
+    static void checkNotice(Map<String, Object> response) throws IOException {
+        if (response == null) return;
+        Object notice = response.containsKey(NOTE_KEY) ? response.get(NOTE_KEY) : response.get(INFORMATION_KEY);
+        if (notice == null) return;
+        String message = String.valueOf(notice);
+        if (isRateLimitNotice(message)) {
+            throw new MarketDataScheduler.RateLimitedException(message);
+        }
+        throw new IOException("Alpha Vantage: " + message);
+    }
+
+    /** Whether a {@code Note}/{@code Information} message from Alpha Vantage is a throttling notice. */
+    static boolean isRateLimitNotice(String message) {
+        return message != null && RATE_LIMIT_NOTICE.matcher(message).find();
+    }
+
+    private URI uri(Map<String, String> query) {
+        StringBuilder uri = new StringBuilder(config.getBaseUrl()).append('?');
+        query.forEach((name, value) -> uri.append(name).append('=')
+                .append(URLEncoder.encode(value, StandardCharsets.UTF_8)).append('&'));
+        uri.setLength(uri.length() - 1);
+        return URI.create(uri.toString());
+    }
+}
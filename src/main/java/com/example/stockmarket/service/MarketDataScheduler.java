@@ -0,0 +1,204 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.config.AlphaVantageConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single gate for every Alpha Vantage call. Calls wait in a priority queue (interactive ahead
+ * of batch, FIFO within a class) and are released by a token bucket sized to the API quota.
+ * When a call reports a rate-limit response it is requeued and dispatch pauses with an
+ * exponentially growing backoff, which resets after the next successful call. A semaphore caps
+ * the calls in flight, so the upstream executor may be an unbounded virtual-thread executor.
+ */
+@Component
+public class MarketDataScheduler {
+    private static final Logger log = LoggerFactory.getLogger(MarketDataScheduler.class);
+
+    public enum Priority {
+        INTERACTIVE,
+        BATCH
+    }
+
+    /** Thrown by a scheduled call when the upstream answered with a rate-limit notice. */
+    public static class RateLimitedException extends RuntimeException {
+        public RateLimitedException(String message) {
+            super(message);
+        }
+    }
+
+    private final PriorityBlockingQueue<Task<?>> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final Thread dispatcher;
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxRetries;
+    private final Counter dispatched;
+    private final Counter rateLimited;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long backoffNanos;
+    private long pausedUntil;
+    private volatile boolean running = true;
+
+    public MarketDataScheduler(AlphaVantageConfig config, @Qualifier("upstreamExecutorService") ExecutorService workers,
+                               MeterRegistry meterRegistry) {
+        this.capacity = Math.max(1, config.getBurst());
+        this.tokens = capacity;
+        this.tokensPerNano = config.getRequestsPerMinute() / (double) TimeUnit.MINUTES.toNanos(1);
+        this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(config.getInitialBackoffMillis());
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxBackoffMillis());
+        this.maxRetries = config.getMaxRetries();
+        this.workers = workers;
+        this.inFlight = new Semaphore(config.getMaxConcurrentRequests());
+        this.dispatched = meterRegistry.counter("market.data.requests", "outcome", "dispatched");
+        this.rateLimited = meterRegistry.counter("market.data.requests", "outcome", "rate_limited");
+        Gauge.builder("market.data.queue.size", queue, PriorityBlockingQueue::size).register(meterRegistry);
+        Gauge.builder("market.data.in.flight", inFlight, permits -> config.getMaxConcurrentRequests() - permits.availablePermits())
+                .register(meterRegistry);
+        this.dispatcher = new Thread(this::dispatchLoop, "market-data-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues an asynchronous upstream call. {@code call} is started once the call is released and
+     * holds a concurrency permit until its future completes; the returned future completes with
+     * its result, after any rate-limit retries.
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<CompletableFuture<T>> call) {
+        Task<T> task = new Task<>(priority, sequence.incrementAndGet(), call);
+        queue.add(task);
+        return task.future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                Task<?> task = queue.take();
+                inFlight.acquire();
+                awaitPermit();
+                // A more urgent call may have arrived while we waited for the permit
+                Task<?> head = queue.peek();
+                if (head != null && head.compareTo(task) < 0) {
+                    queue.add(task);
+                    task = queue.take();
+                }
+                Task<?> next = task;
+                try {
+                    workers.execute(() -> run(next));
+                    dispatched.increment();
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    next.future.completeExceptionally(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Market data dispatcher error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private <T> void run(Task<T> task) {
+        CompletableFuture<T> call;
+        try {
+            call = task.call.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((result, error) -> {
+            inFlight.release();
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause == null) {
+                onSuccess();
+                task.future.complete(result);
+            } else if (cause instanceof RateLimitedException) {
+                rateLimited.increment();
+                long pause = onRateLimited();
+                if (task.attempts++ < maxRetries) {
+                    log.warn("Rate limited by Alpha Vantage, pausing {} ms and retrying (attempt {}): {}",
+                            TimeUnit.NANOSECONDS.toMillis(pause), task.attempts, cause.getMessage());
+                    queue.add(task);
+                } else {
+                    task.future.completeExceptionally(cause);
+                }
+            } else {
+                task.future.completeExceptionally(cause);
+            }
+        });
+    }
+
+    private synchronized void awaitPermit() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            long waitNanos = Math.max(pausedUntil - now, tokens >= 1 ? 0 : (long) ((1 - tokens) / tokensPerNano));
+            if (waitNanos <= 0) {
+                tokens -= 1;
+                return;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    private synchronized void onSuccess() {
+        backoffNanos = 0;
+    }
+
+    private synchronized long onRateLimited() {
+        backoffNanos = backoffNanos == 0 ? initialBackoffNanos : Math.min(maxBackoffNanos, backoffNanos * 2);
+        pausedUntil = System.nanoTime() + backoffNanos;
+        tokens = 0;
+        return backoffNanos;
+    }
+
+    private static final class Task<T> implements Comparable<Task<?>> {
+        private final Priority priority;
+        private final long sequence;
+        private final Supplier<CompletableFuture<T>> call;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int attempts;
+
+        private Task(Priority priority, long sequence, Supplier<CompletableFuture<T>> call) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.call = call;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,21 +1,26 @@
 package com.example.stockmarket.service;
 
+import com.example.stockmarket.model.AddStockRequest;
+import com.example.stockmarket.model.BulkImportResultDTO;
 import com.example.stockmarket.model.Portfolio;
 import com.example.stockmarket.model.PortfolioAnalyticsDTO;
+import com.example.stockmarket.model.PortfolioPageDTO;
 import com.example.stockmarket.model.PortfolioStock;
 import java.util.List;
 import java.util.Optional;
 
 public interface PortfolioService {
     Portfolio createPortfolio(String name, String owner);
-    List<Portfolio> getPortfoliosByOwner(String owner);
     Optional<Portfolio> getPortfolio(Long id);
     void deletePortfolio(Long id);
 
     PortfolioStock addStockToPortfolio(Long portfolioId, String symbol, Integer quantity, Double buyPrice);
+    BulkImportResultDTO importPositions(Long portfolioId, List<AddStockRequest> positions);
     void removeStockFromPortfolio(Long portfolioStockId);
     List<PortfolioStock> getStocksInPortfolio(Long portfolioId);
     Portfolio updatePortfolioAnalytics(Long portfolioId);
-    List<Portfolio> getAllPortfolios();
+    /** A page of portfolios with ids above {@code after}, optionally of one owner, in id order. */
+    PortfolioPageDTO listPortfolios(String owner, Long after, int limit, boolean includeStocks);
     PortfolioAnalyticsDTO getPortfolioAnalytics(Long portfolioId);
+    List<PortfolioAnalyticsDTO> getOwnerAnalytics(String owner, boolean includeAllocations);
 }
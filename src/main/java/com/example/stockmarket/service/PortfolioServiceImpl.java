@@ -1,36 +1,70 @@
 package com.example.stockmarket.service;
 
-import com.example.stockmarket.config.AlphaVantageConfig;
+import com.example.stockmarket.model.AddStockRequest;
+import com.example.stockmarket.model.BulkImportResultDTO;
 import com.example.stockmarket.model.Portfolio;
 import com.example.stockmarket.model.PortfolioAnalyticsDTO;
+import com.example.stockmarket.model.PortfolioPageDTO;
+import com.example.stockmarket.model.PortfolioSummaryDTO;
 import com.example.stockmarket.model.PortfolioStock;
 import com.example.stockmarket.repository.PortfolioRepository;
 import com.example.stockmarket.repository.PortfolioStockRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Types;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class PortfolioServiceImpl implements PortfolioService {
     private static final Logger logger = LoggerFactory.getLogger(PortfolioServiceImpl.class);
     private final PortfolioRepository portfolioRepository;
     private final PortfolioStockRepository portfolioStockRepository;
-    private final AlphaVantageConfig config;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final MarketDataClient marketDataClient;
+    private final PortfolioValuationCache valuationCache;
+    private final RedisTemplate<String, Double> redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int importBatchSize;
 
     private static final String PORTFOLIO_NOT_FOUND = "Portfolio not found";
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Same keys and lifetime as the nightly price update
+    private static final Duration PRICE_TTL = Duration.ofHours(12);
+    private static final String INSERT_POSITION_SQL =
+            "insert into portfolio_stock (portfolio_id, symbol, quantity, buy_price, current_price) values (?, ?, ?, ?, ?)";
+    private static final String FILL_PRICE_SQL =
+            "update portfolio_stock set current_price = ? where portfolio_id = ? and symbol = ? and current_price is null";
 
-    public PortfolioServiceImpl(PortfolioRepository portfolioRepository, PortfolioStockRepository portfolioStockRepository, AlphaVantageConfig config) {
+    public PortfolioServiceImpl(PortfolioRepository portfolioRepository, PortfolioStockRepository portfolioStockRepository, MarketDataClient marketDataClient,
+                                PortfolioValuationCache valuationCache, RedisTemplate<String, Double> redisTemplate, JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${stockmarket.import.batch-size:500}") int importBatchSize) {
         this.portfolioRepository = portfolioRepository;
         this.portfolioStockRepository = portfolioStockRepository;
-        this.config = config;
+        this.marketDataClient = marketDataClient;
+        this.valuationCache = valuationCache;
+        this.redisTemplate = redisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.importBatchSize = Math.max(1, importBatchSize);
     }
 
     @Override
@@ -41,11 +75,6 @@ public class PortfolioServiceImpl implements PortfolioService {
         return portfolioRepository.save(portfolio);
     }
 
-    @Override
-    public List<Portfolio> getPortfoliosByOwner(String owner) {
-        return portfolioRepository.findByOwner(owner);
-    }
-
     @Override
     public Optional<Portfolio> getPortfolio(Long id) {
         return portfolioRepository.findById(id);
@@ -54,10 +83,10 @@ public class PortfolioServiceImpl implements PortfolioService {
     @Override
     public void deletePortfolio(Long id) {
         portfolioRepository.deleteById(id);
+        valuationCache.portfolioRemoved(id);
     }
 
     @Override
-    @Transactional
     public PortfolioStock addStockToPortfolio(Long portfolioId, String symbol, Integer quantity, Double buyPrice) {
         Portfolio portfolio = portfolioRepository.findById(portfolioId)
                 .orElseThrow(() -> new IllegalArgumentException(PORTFOLIO_NOT_FOUND));
@@ -67,34 +96,135 @@ public class PortfolioServiceImpl implements PortfolioService {
         stock.setQuantity(quantity);
         stock.setBuyPrice(buyPrice);
 
-        // Fetch current price using Alpha Vantage API
-        Double currentPrice = fetchCurrentPrice(symbol);
+        // Priced from the cache; otherwise saved unpriced and filled in once the quote arrives,
+        // so the request never waits on the upstream
+        Double currentPrice = readCachedPrices(List.of(symbol)).get(symbol);
         stock.setCurrentPrice(currentPrice);
 
-        return portfolioStockRepository.save(stock);
+        PortfolioStock saved = portfolioStockRepository.save(stock);
+        valuationCache.positionSaved(saved);
+        if (currentPrice == null) {
+            fillInPrice(portfolioId, symbol, MarketDataScheduler.Priority.INTERACTIVE);
+        }
+        return saved;
+    }
+
+    /**
+     * Inserts the positions as JDBC batches in one transaction. Current prices come from the
+     * Redis price cache; symbols not cached are quoted afterwards at batch priority and filled in
+     * as the quotes arrive, so the import itself never waits on the upstream.
+     */
+    @Override
+    public BulkImportResultDTO importPositions(Long portfolioId, List<AddStockRequest> positions) {
+        if (!portfolioRepository.existsById(portfolioId)) {
+            throw new IllegalArgumentException(PORTFOLIO_NOT_FOUND);
+        }
+        List<AddStockRequest> valid = new ArrayList<>(positions.size());
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < positions.size(); i++) {
+            AddStockRequest position = positions.get(i);
+            if (position == null || position.getSymbol() == null || position.getSymbol().isBlank()) {
+                errors.add("Position " + (i + 1) + ": symbol is required");
+            } else if (position.getQuantity() != null && position.getQuantity() < 0) {
+                errors.add("Position " + (i + 1) + ": quantity must not be negative");
+            } else {
+                position.setSymbol(position.getSymbol().trim());
+                valid.add(position);
+            }
+        }
+        Set<String> symbols = new LinkedHashSet<>();
+        valid.forEach(position -> symbols.add(position.getSymbol()));
+        Map<String, Double> cached = readCachedPrices(new ArrayList<>(symbols));
+
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(INSERT_POSITION_SQL, valid, importBatchSize, (ps, position) -> {
+                    ps.setLong(1, portfolioId);
+                    ps.setString(2, position.getSymbol());
+                    ps.setObject(3, position.getQuantity(), Types.INTEGER);
+                    ps.setObject(4, position.getBuyPrice(), Types.DOUBLE);
+                    ps.setObject(5, cached.get(position.getSymbol()), Types.DOUBLE);
+                }));
+        if (!valid.isEmpty()) {
+            valuationCache.portfolioChanged(portfolioId);
+        }
+
+        List<String> unpriced = new ArrayList<>();
+        for (String symbol : symbols) {
+            if (!cached.containsKey(symbol)) unpriced.add(symbol);
+        }
+        for (String symbol : unpriced) {
+            fillInPrice(portfolioId, symbol, MarketDataScheduler.Priority.BATCH);
+        }
+        logger.info("Imported {} position(s) into portfolio {}, {} rejected, {} symbol(s) awaiting a price",
+                valid.size(), portfolioId, errors.size(), unpriced.size());
+
+        BulkImportResultDTO result = new BulkImportResultDTO();
+        result.setImported(valid.size());
+        result.setRejected(errors.size());
+        result.setSymbolsPricePending(unpriced.size());
+        result.setErrors(errors);
+        return result;
     }
 
-    private Double fetchCurrentPrice(String symbol) {
+    /** Quotes {@code symbol} and sets it on the portfolio's positions that have no price yet. */
+    private void fillInPrice(Long portfolioId, String symbol, MarketDataScheduler.Priority priority) {
+        fetchCurrentPrice(symbol, priority).thenAccept(price -> {
+            if (price == null) return;
+            jdbcTemplate.update(FILL_PRICE_SQL, price, portfolioId, symbol);
+            cachePrice(symbol, price);
+            valuationCache.portfolioChanged(portfolioId);
+        }).exceptionally(e -> {
+            logger.error("Failed to fill in current price for {} in portfolio {}: {}", symbol, portfolioId, e.getMessage());
+            return null;
+        });
+    }
+
+    private CompletableFuture<Double> fetchCurrentPrice(String symbol, MarketDataScheduler.Priority priority) {
+        return marketDataClient.queryJson(priority, "GLOBAL_QUOTE", Map.of("symbol", symbol))
+                .thenApply(response -> {
+                    Object globalQuoteObj = response != null ? response.get("Global Quote") : null;
+                    if (globalQuoteObj instanceof Map<?, ?> globalQuote) {
+                        Object priceObj = globalQuote.get("05. price");
+                        if (priceObj instanceof String price) {
+                            return Double.valueOf(price);
+                        }
+                    }
+                    return (Double) null;
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to fetch current price for symbol {}: {}", symbol, e.getMessage());
+                    return null; // Handle fallback logic if needed
+                });
+    }
+
+    /** Prices cached today by the nightly update or earlier lookups, in one round trip. */
+    private Map<String, Double> readCachedPrices(List<String> symbols) {
+        Map<String, Double> prices = new HashMap<>();
+        if (symbols.isEmpty()) return prices;
         try {
-            String apiKey = config.getApiKey(); // Replace with dynamic retrieval if needed
-            String url = "https://www.alphavantage.co/query?function=GLOBAL_QUOTE&symbol=" + symbol + "&apikey=" + apiKey;
-            Map<String, Object> response = restTemplate.getForObject(url, Map.class);
-            Object globalQuoteObj = response.get("Global Quote");
-            if (globalQuoteObj instanceof Map<?, ?> globalQuote) {
-                Object priceObj = globalQuote.get("05. price");
-                if (priceObj instanceof String price) {
-                    return Double.valueOf(price);
-                }
+            List<Double> cached = redisTemplate.opsForValue().multiGet(symbols);
+            for (int i = 0; cached != null && i < symbols.size(); i++) {
+                if (cached.get(i) != null) prices.put(symbols.get(i), cached.get(i));
             }
-        } catch (Exception e) {
-            logger.error("Failed to fetch current price for symbol {}: {}", symbol, e.getMessage());
+        } catch (DataAccessException e) {
+            logger.warn("Failed to read cached prices from Redis: {}", e.getMessage());
+        }
+        return prices;
+    }
+
+    private void cachePrice(String symbol, Double price) {
+        if (price == null) return;
+        try {
+            redisTemplate.opsForValue().set(symbol, price, PRICE_TTL);
+        } catch (DataAccessException e) {
+            logger.warn("Failed to cache price for {} in Redis: {}", symbol, e.getMessage());
         }
-        return null; // Handle fallback logic if needed
     }
 
     @Override
     public void removeStockFromPortfolio(Long portfolioStockId) {
         portfolioStockRepository.deleteById(portfolioStockId);
+        valuationCache.positionRemoved(portfolioStockId);
     }
 
     @Override
@@ -121,50 +251,50 @@ public class PortfolioServiceImpl implements PortfolioService {
         return portfolio;
     }
 
+    /** Served from the materialized valuation; only the first read of a portfolio hits the database. */
     @Override
     public PortfolioAnalyticsDTO getPortfolioAnalytics(Long portfolioId) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
+        return valuationCache.get(portfolioId)
                 .orElseThrow(() -> new IllegalArgumentException(PORTFOLIO_NOT_FOUND));
-        List<PortfolioStock> stocks = portfolioStockRepository.findByPortfolioId(portfolioId);
-
-        double totalValue = stocks.stream()
-                .mapToDouble(stock -> getSafePrice(stock.getCurrentPrice(), stock.getBuyPrice()) * getSafeQuantity(stock.getQuantity()))
-                .sum();
-
-        double totalCost = stocks.stream()
-                .mapToDouble(stock -> getSafePrice(stock.getBuyPrice(), 0.0) * getSafeQuantity(stock.getQuantity()))
-                .sum();
-
-        double pnl = totalValue - totalCost;
+    }
 
-        List<PortfolioAnalyticsDTO.StockAllocation> allocations = new ArrayList<>();
-        for (PortfolioStock stock : stocks) {
-            String symbol = stock.getSymbol();
-            if (symbol != null && !symbol.isEmpty()) {
-                double currentPrice = getSafePrice(stock.getCurrentPrice(), stock.getBuyPrice());
-                double qty = getSafeQuantity(stock.getQuantity());
+    /**
+     * Analytics of every portfolio of {@code owner} from one grouped query; the allocations,
+     * when asked for, come from one more query over the owner's positions.
+     */
+    @Override
+    public List<PortfolioAnalyticsDTO> getOwnerAnalytics(String owner, boolean includeAllocations) {
+        Map<Long, PortfolioAnalyticsDTO> byPortfolio = new LinkedHashMap<>();
+        for (Object[] row : portfolioRepository.findValuationsByOwner(owner)) {
+            PortfolioAnalyticsDTO dto = new PortfolioAnalyticsDTO();
+            dto.setPortfolioId((Long) row[0]);
+            dto.setName((String) row[1]);
+            dto.setOwner((String) row[2]);
+            dto.setTotalValue(((Number) row[3]).doubleValue());
+            dto.setTotalCost(((Number) row[4]).doubleValue());
+            dto.setPnl(dto.getTotalValue() - dto.getTotalCost());
+            if (includeAllocations) dto.setAllocations(new ArrayList<>());
+            byPortfolio.put(dto.getPortfolioId(), dto);
+        }
+        if (includeAllocations && !byPortfolio.isEmpty()) {
+            for (Object[] row : portfolioStockRepository.findPositionsByOwner(owner)) {
+                PortfolioAnalyticsDTO dto = byPortfolio.get((Long) row[0]);
+                if (dto == null) continue;
+                Double buyPrice = (Double) row[3];
+                double currentPrice = getSafePrice((Double) row[4], buyPrice);
+                double qty = getSafeQuantity((Integer) row[2]);
                 double positionValue = currentPrice * qty;
-                double allocation = totalValue > 0 ? (positionValue / totalValue) * 100 : 0;
                 PortfolioAnalyticsDTO.StockAllocation alloc = new PortfolioAnalyticsDTO.StockAllocation();
-                alloc.setSymbol(symbol);
-                alloc.setAllocation(allocation);
+                alloc.setSymbol((String) row[1]);
+                alloc.setAllocation(dto.getTotalValue() > 0 ? (positionValue / dto.getTotalValue()) * 100 : 0);
                 alloc.setPositionValue(positionValue);
-                alloc.setBuyPrice(stock.getBuyPrice() != null ? stock.getBuyPrice() : 0.0);
+                alloc.setBuyPrice(buyPrice != null ? buyPrice : 0.0);
                 alloc.setCurrentPrice(currentPrice);
                 alloc.setQuantity(qty > 0 ? (int) qty : 0);
-                allocations.add(alloc);
+                dto.getAllocations().add(alloc);
             }
         }
-
-        PortfolioAnalyticsDTO dto = new PortfolioAnalyticsDTO();
-        dto.setPortfolioId(portfolio.getId());
-        dto.setName(portfolio.getName());
-        dto.setOwner(portfolio.getOwner());
-        dto.setTotalValue(totalValue);
-        dto.setTotalCost(totalCost);
-        dto.setPnl(pnl);
-        dto.setAllocations(allocations);
-        return dto;
+        return new ArrayList<>(byPortfolio.values());
     }
 
     private double getSafePrice(Double price, Double fallback) {
@@ -197,8 +327,42 @@ public class PortfolioServiceImpl implements PortfolioService {
         }
     }
 
+    /**
+     * Seeks past {@code after} on the primary key (or the owner/id index), so every page costs
+     * the same however deep it is. Stocks, when included, are read for the whole page at once.
+     */
     @Override
-    public List<Portfolio> getAllPortfolios() {
-        return portfolioRepository.findAll();
+    public PortfolioPageDTO listPortfolios(String owner, Long after, int limit, boolean includeStocks) {
+        int size = Math.min(Math.max(1, limit), MAX_PAGE_SIZE);
+        long cursor = after != null ? after : 0L;
+        // One extra row tells whether another page follows
+        Pageable pageable = PageRequest.of(0, size + 1);
+        List<PortfolioSummaryDTO> portfolios = owner != null && !owner.isEmpty()
+                ? portfolioRepository.findSummariesByOwnerAfter(owner, cursor, pageable)
+                : portfolioRepository.findSummariesAfter(cursor, pageable);
+        boolean more = portfolios.size() > size;
+        if (more) {
+            portfolios = portfolios.subList(0, size);
+        }
+        if (includeStocks && !portfolios.isEmpty()) {
+            Map<Long, PortfolioSummaryDTO> byId = new HashMap<>();
+            for (PortfolioSummaryDTO portfolio : portfolios) {
+                portfolio.setStocks(new ArrayList<>());
+                byId.put(portfolio.getId(), portfolio);
+            }
+            for (Object[] row : portfolioStockRepository.findPositionsByPortfolioIds(byId.keySet())) {
+                PortfolioSummaryDTO.Position position = new PortfolioSummaryDTO.Position();
+                position.setId((Long) row[1]);
+                position.setSymbol((String) row[2]);
+                position.setQuantity((Integer) row[3]);
+                position.setBuyPrice((Double) row[4]);
+                position.setCurrentPrice((Double) row[5]);
+                byId.get((Long) row[0]).getStocks().add(position);
+            }
+        }
+        PortfolioPageDTO page = new PortfolioPageDTO();
+        page.setPortfolios(portfolios);
+        page.setNextCursor(more ? portfolios.get(portfolios.size() - 1).getId() : null);
+        return page;
     }
 }
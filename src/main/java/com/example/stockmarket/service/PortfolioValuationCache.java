@@ -0,0 +1,348 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.Portfolio;
+import com.example.stockmarket.model.PortfolioAnalyticsDTO;
+import com.example.stockmarket.model.PortfolioStock;
+import com.example.stockmarket.repository.PortfolioRepository;
+import com.example.stockmarket.repository.PortfolioStockRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materialized {@link PortfolioAnalyticsDTO} per portfolio. A portfolio is loaded from the
+ * database on its first read; afterwards position changes and price updates are applied to the
+ * in-memory positions, with a reverse index from symbol to the portfolios holding it so a price
+ * touches only those. The analytics are rebuilt from memory on the first read after a change and
+ * returned as-is until the next one. Changes are relayed through Redis pub/sub, so every node's
+ * copy follows writes made on any node. Pub/sub does not guarantee delivery, so a portfolio is
+ * also reloaded from the database once it has been held for
+ * {@code stockmarket.valuation.max-age-ms}; a missed message is wrong for at most that long.
+ */
+@Component
+public class PortfolioValuationCache {
+    private static final Logger log = LoggerFactory.getLogger(PortfolioValuationCache.class);
+    static final String CHANNEL = "portfolio-valuation";
+
+    enum EventType {
+        PRICES,
+        POSITION_SAVED,
+        POSITION_REMOVED,
+        PORTFOLIO_CHANGED
+    }
+
+    /** A change relayed to every node; fields not used by the type are {@code null}. */
+    record Event(EventType type, Long portfolioId, Long positionId, String symbol, Integer quantity, Double buyPrice,
+                 Double currentPrice, Map<String, Double> prices) {}
+
+    private final PortfolioRepository portfolioRepository;
+    private final PortfolioStockRepository portfolioStockRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final long maxAgeNanos;
+    private final Map<Long, Valuation> valuations = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> portfoliosBySymbol = new ConcurrentHashMap<>();
+    private final Map<Long, Long> portfolioByPosition = new ConcurrentHashMap<>();
+    // Bumped by every applied change; a load that raced with one is returned but not kept
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter rebuilds;
+    private final Counter loads;
+
+    public PortfolioValuationCache(PortfolioRepository portfolioRepository, PortfolioStockRepository portfolioStockRepository,
+                                   StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                                   RedisMessageListenerContainer listenerContainer, MeterRegistry meterRegistry,
+                                   @Value("${stockmarket.valuation.max-age-ms:300000}") long maxAgeMillis) {
+        this.portfolioRepository = portfolioRepository;
+        this.portfolioStockRepository = portfolioStockRepository;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.hits = meterRegistry.counter("portfolio.valuation.reads", "result", "hit");
+        this.rebuilds = meterRegistry.counter("portfolio.valuation.reads", "result", "rebuild");
+        this.loads = meterRegistry.counter("portfolio.valuation.reads", "result", "load");
+        meterRegistry.gaugeMapSize("portfolio.valuation.portfolios", Tags.empty(), valuations);
+        listenerContainer.addMessageListener((message, pattern) -> receive(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Analytics of the portfolio, or empty when it does not exist. The returned object is shared
+     * between callers until the portfolio next changes and must not be modified.
+     */
+    public Optional<PortfolioAnalyticsDTO> get(Long portfolioId) {
+        Valuation valuation = valuations.get(portfolioId);
+        if (valuation != null) {
+            if (System.nanoTime() - valuation.loadedNanos < maxAgeNanos) {
+                return Optional.of(valuation.analytics());
+            }
+            expire(valuation);
+        }
+        long loadedAt = generation.get();
+        Optional<Portfolio> portfolio = portfolioRepository.findById(portfolioId);
+        if (portfolio.isEmpty()) return Optional.empty();
+        loads.increment();
+        valuation = new Valuation(portfolio.get());
+        for (PortfolioStock stock : portfolioStockRepository.findByPortfolioId(portfolioId)) {
+            valuation.put(stock.getId(), stock.getSymbol(), stock.getQuantity(), stock.getBuyPrice(), stock.getCurrentPrice());
+        }
+        synchronized (this) {
+            if (generation.get() == loadedAt && !valuations.containsKey(portfolioId)) {
+                valuations.put(portfolioId, valuation);
+                valuation.index();
+            }
+        }
+        return Optional.of(valuation.analytics());
+    }
+
+    private synchronized void expire(Valuation valuation) {
+        if (valuations.remove(valuation.portfolioId, valuation)) {
+            valuation.unindex();
+        }
+    }
+
+    /** Announces a saved position once the surrounding transaction, if any, has committed. */
+    public void positionSaved(PortfolioStock stock) {
+        Long portfolioId = stock.getPortfolio() != null ? stock.getPortfolio().getId() : null;
+        publishAfterCommit(new Event(EventType.POSITION_SAVED, portfolioId, stock.getId(), stock.getSymbol(),
+                stock.getQuantity(), stock.getBuyPrice(), stock.getCurrentPrice(), null));
+    }
+
+    public void positionRemoved(Long positionId) {
+        publishAfterCommit(new Event(EventType.POSITION_REMOVED, null, positionId, null, null, null, null, null));
+    }
+
+    public void portfolioRemoved(Long portfolioId) {
+        portfolioChanged(portfolioId);
+    }
+
+    /** Drops the portfolio from memory everywhere; the next read loads it again. For bulk changes. */
+    public void portfolioChanged(Long portfolioId) {
+        publishAfterCommit(new Event(EventType.PORTFOLIO_CHANGED, portfolioId, null, null, null, null, null, null));
+    }
+
+    /** Announces new current prices written for every position of the given symbols. */
+    public void pricesUpdated(Map<String, Double> prices) {
+        if (prices.isEmpty()) return;
+        publishAfterCommit(new Event(EventType.PRICES, null, null, null, null, null, null, Map.copyOf(prices)));
+    }
+
+    private void publishAfterCommit(Event event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(event);
+                }
+            });
+        } else {
+            publish(event);
+        }
+    }
+
+    private void publish(Event event) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to encode valuation event {}: {}", event.type(), e.getMessage());
+            apply(event);
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, payload);
+        } catch (Exception e) {
+            // Without Redis at least this node stays current
+            log.warn("Failed to publish valuation event {}: {}", event.type(), e.getMessage());
+            apply(event);
+        }
+    }
+
+    private void receive(String payload) {
+        try {
+            apply(objectMapper.readValue(payload, Event.class));
+        } catch (IOException e) {
+            log.warn("Ignoring malformed valuation event: {}", e.getMessage());
+        }
+    }
+
+    /** Applies a change to the portfolios held in memory; applying the same change twice is harmless. */
+    synchronized void apply(Event event) {
+        generation.incrementAndGet();
+        switch (event.type()) {
+            case PRICES -> event.prices().forEach((symbol, price) -> {
+                for (Long portfolioId : portfoliosBySymbol.getOrDefault(symbol, Set.of())) {
+                    Valuation valuation = valuations.get(portfolioId);
+                    if (valuation != null) valuation.updatePrice(symbol, price);
+                }
+            });
+            case POSITION_SAVED -> {
+                Valuation valuation = event.portfolioId() != null ? valuations.get(event.portfolioId()) : null;
+                if (valuation != null) {
+                    valuation.put(event.positionId(), event.symbol(), event.quantity(), event.buyPrice(), event.currentPrice());
+                    valuation.index();
+                }
+            }
+            case POSITION_REMOVED -> {
+                Long portfolioId = portfolioByPosition.remove(event.positionId());
+                Valuation valuation = portfolioId != null ? valuations.get(portfolioId) : null;
+                if (valuation != null) valuation.remove(event.positionId());
+            }
+            case PORTFOLIO_CHANGED -> {
+                Valuation valuation = valuations.remove(event.portfolioId());
+                if (valuation != null) valuation.unindex();
+            }
+        }
+    }
+
+    private static final class Position {
+        final String symbol;
+        final Integer quantity;
+        final Double buyPrice;
+        Double currentPrice;
+
+        Position(String symbol, Integer quantity, Double buyPrice, Double currentPrice) {
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.buyPrice = buyPrice;
+            this.currentPrice = currentPrice;
+        }
+    }
+
+    /** One portfolio's positions; mutated only under the cache's lock. */
+    private final class Valuation {
+        private final Long portfolioId;
+        private final String name;
+        private final String owner;
+        private final Map<Long, Position> positions = new LinkedHashMap<>();
+        private final long loadedNanos = System.nanoTime();
+        private volatile PortfolioAnalyticsDTO analytics;
+
+        Valuation(Portfolio portfolio) {
+            this.portfolioId = portfolio.getId();
+            this.name = portfolio.getName();
+            this.owner = portfolio.getOwner();
+        }
+
+        void put(Long positionId, String symbol, Integer quantity, Double buyPrice, Double currentPrice) {
+            positions.put(positionId, new Position(symbol, quantity, buyPrice, currentPrice));
+            analytics = null;
+        }
+
+        void remove(Long positionId) {
+            Position removed = positions.remove(positionId);
+            if (removed == null) return;
+            if (removed.symbol != null && positions.values().stream().noneMatch(p -> removed.symbol.equals(p.symbol))) {
+                Set<Long> holders = portfoliosBySymbol.get(removed.symbol);
+                if (holders != null) holders.remove(portfolioId);
+            }
+            analytics = null;
+        }
+
+        void updatePrice(String symbol, Double price) {
+            for (Position position : positions.values()) {
+                if (symbol.equals(position.symbol)) position.currentPrice = price;
+            }
+            analytics = null;
+        }
+
+        void index() {
+            positions.forEach((positionId, position) -> {
+                portfolioByPosition.put(positionId, portfolioId);
+                if (position.symbol != null) {
+                    portfoliosBySymbol.computeIfAbsent(position.symbol, symbol -> ConcurrentHashMap.newKeySet()).add(portfolioId);
+                }
+            });
+        }
+
+        void unindex() {
+            positions.forEach((positionId, position) -> {
+                portfolioByPosition.remove(positionId);
+                Set<Long> holders = position.symbol != null ? portfoliosBySymbol.get(position.symbol) : null;
+                if (holders != null) holders.remove(portfolioId);
+            });
+        }
+
+        PortfolioAnalyticsDTO analytics() {
+            PortfolioAnalyticsDTO current = analytics;
+            if (current != null) {
+                hits.increment();
+                return current;
+            }
+            synchronized (PortfolioValuationCache.this) {
+                if (analytics == null) {
+                    rebuilds.increment();
+                    analytics = build();
+                }
+                return analytics;
+            }
+        }
+
+        private PortfolioAnalyticsDTO build() {
+            double totalValue = 0.0;
+            double totalCost = 0.0;
+            for (Position position : positions.values()) {
+                double qty = safeQuantity(position.quantity);
+                totalValue += safePrice(position.currentPrice, position.buyPrice) * qty;
+                totalCost += safePrice(position.buyPrice, 0.0) * qty;
+            }
+            List<PortfolioAnalyticsDTO.StockAllocation> allocations = new ArrayList<>(positions.size());
+            for (Position position : positions.values()) {
+                if (position.symbol == null || position.symbol.isEmpty()) continue;
+                double currentPrice = safePrice(position.currentPrice, position.buyPrice);
+                double qty = safeQuantity(position.quantity);
+                double positionValue = currentPrice * qty;
+                PortfolioAnalyticsDTO.StockAllocation alloc = new PortfolioAnalyticsDTO.StockAllocation();
+                alloc.setSymbol(position.symbol);
+                alloc.setAllocation(totalValue > 0 ? (positionValue / totalValue) * 100 : 0);
+                alloc.setPositionValue(positionValue);
+                alloc.setBuyPrice(position.buyPrice != null ? position.buyPrice : 0.0);
+                alloc.setCurrentPrice(currentPrice);
+                alloc.setQuantity(qty > 0 ? (int) qty : 0);
+                allocations.add(alloc);
+            }
+            PortfolioAnalyticsDTO dto = new PortfolioAnalyticsDTO();
+            dto.setPortfolioId(portfolioId);
+            dto.setName(name);
+            dto.setOwner(owner);
+            dto.setTotalValue(totalValue);
+            dto.setTotalCost(totalCost);
+            dto.setPnl(totalValue - totalCost);
+            dto.setAllocations(List.copyOf(allocations));
+            return dto;
+        }
+    }
+
+    private static double safePrice(Double price, Double fallback) {
+        if (price != null) return price;
+        if (fallback != null) return fallback;
+        return 0.0;
+    }
+
+    private static double safeQuantity(Integer quantity) {
+        return quantity != null ? quantity : 0.0;
+    }
+}
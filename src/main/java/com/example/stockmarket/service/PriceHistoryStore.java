@@ -0,0 +1,42 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public interface PriceHistoryStore {
+    /** Date of the newest stored bar, or {@code null} if the symbol has never been backfilled. */
+    LocalDate latestDate(String symbol);
+
+    /**
+     * {@link #latestDate(String)} for many symbols, keyed by upper-cased symbol. Symbols that were
+     * never backfilled are absent.
+     */
+    default Map<String, LocalDate> latestDates(Collection<String> symbols) {
+        Map<String, LocalDate> latest = new HashMap<>();
+        for (String symbol : symbols) {
+            LocalDate date = latestDate(symbol);
+            if (date != null) latest.put(symbol.toUpperCase(), date);
+        }
+        return latest;
+    }
+
+    /** Stored bars dated within {@code [from, to]}; either bound may be {@code null} for open-ended. */
+    PriceSeries load(String symbol, LocalDate from, LocalDate to);
+
+    /**
+     * Stored bars dated within {@code [from, to]} preceded by up to {@code warmUpBars} earlier
+     * bars, so indicators have their look-back window filled at {@code from}. Either bound may be
+     * {@code null}; without {@code from} there is nothing to warm up and the whole history is read.
+     */
+    PriceSeries load(String symbol, LocalDate from, LocalDate to, int warmUpBars);
+
+    /** The newest {@code bars} stored bars. */
+    PriceSeries loadLatest(String symbol, int bars);
+
+    /** Stores the given bars, ignoring any dates that are already present. */
+    void append(String symbol, PriceSeries bars);
+}
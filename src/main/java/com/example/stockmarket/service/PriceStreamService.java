@@ -0,0 +1,188 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceUpdate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes {@link PriceUpdate}s to server-sent-event subscribers. Updates are published on a Redis
+ * channel so a price recorded on any node reaches clients connected to every node. Each
+ * subscriber has a bounded buffer drained by its own task; when a client reads slower than
+ * updates arrive, the oldest buffered updates are dropped, so a slow client never holds memory
+ * or threads beyond its buffer.
+ */
+@Service
+public class PriceStreamService {
+    private static final Logger log = LoggerFactory.getLogger(PriceStreamService.class);
+    static final String CHANNEL = "price-updates";
+    private static final String EVENT_NAME = "price";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService streamExecutor;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Counter droppedUpdates;
+
+    public PriceStreamService(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                              @Qualifier("streamExecutorService") ExecutorService streamExecutor,
+                              RedisMessageListenerContainer listenerContainer, MeterRegistry meterRegistry,
+                              @Value("${stockmarket.stream.buffer-size:64}") int bufferSize,
+                              @Value("${stockmarket.stream.timeout-ms:1800000}") long timeoutMillis) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.streamExecutor = streamExecutor;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.timeoutMillis = timeoutMillis;
+        this.droppedUpdates = meterRegistry.counter("price.stream.dropped");
+        meterRegistry.gaugeCollectionSize("price.stream.subscribers", Tags.empty(), subscribers);
+        listenerContainer.addMessageListener((message, pattern) -> receive(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Opens a stream of updates for {@code symbols}, or for every symbol when empty. The emitter
+     * completes after {@code stockmarket.stream.timeout-ms}; clients reconnect as usual for SSE.
+     */
+    public SseEmitter subscribe(Collection<String> symbols) {
+        Set<String> filter = symbols == null ? Set.of() : symbols.stream()
+                .filter(symbol -> symbol != null && !symbol.isBlank())
+                .map(symbol -> symbol.trim().toUpperCase())
+                .collect(Collectors.toUnmodifiableSet());
+        return subscribe(filter, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter subscribe(Set<String> filter, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter, filter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        log.debug("Price stream subscriber added for {}", filter.isEmpty() ? "all symbols" : filter);
+        return emitter;
+    }
+
+    /** Announces a new price to subscribers on every node. Never throws. */
+    public void publish(PriceUpdate update) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(update);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to encode price update for {}: {}", update.getSymbol(), e.getMessage());
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, payload);
+        } catch (Exception e) {
+            // Without Redis at least this node's subscribers hear about it
+            log.warn("Failed to publish price update for {}: {}", update.getSymbol(), e.getMessage());
+            deliver(update.getSymbol(), payload);
+        }
+    }
+
+    private void receive(String payload) {
+        try {
+            PriceUpdate update = objectMapper.readValue(payload, PriceUpdate.class);
+            deliver(update.getSymbol(), payload);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed price update: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(String symbol, String payload) {
+        String key = symbol != null ? symbol.toUpperCase() : null;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.symbols.isEmpty() || subscriber.symbols.contains(key)) {
+                subscriber.offer(payload);
+            }
+        }
+    }
+
+    /** Keeps idle connections open through proxies and detects clients that went away. */
+    @Scheduled(fixedDelayString = "${stockmarket.stream.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(null);
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<String> symbols;
+        // Guarded by this; an empty entry is a heartbeat
+        private final ArrayDeque<String> buffer = new ArrayDeque<>();
+        private boolean draining;
+
+        private Subscriber(SseEmitter emitter, Set<String> symbols) {
+            this.emitter = emitter;
+            this.symbols = symbols;
+        }
+
+        void offer(String payload) {
+            synchronized (this) {
+                // A client with updates on their way needs no heartbeat, and one must never
+                // push out a real update
+                if (payload == null && draining) return;
+                if (buffer.size() >= bufferSize) {
+                    buffer.pollFirst();
+                    droppedUpdates.increment();
+                }
+                buffer.addLast(payload == null ? "" : payload);
+                if (draining) return;
+                draining = true;
+            }
+            streamExecutor.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                String payload;
+                synchronized (this) {
+                    payload = buffer.pollFirst();
+                    if (payload == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(payload.isEmpty()
+                            ? SseEmitter.event().comment("heartbeat")
+                            : SseEmitter.event().name(EVENT_NAME).data(payload, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    // Client disconnected or the emitter already completed
+                    subscribers.remove(this);
+                    synchronized (this) {
+                        buffer.clear();
+                        draining = false;
+                    }
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
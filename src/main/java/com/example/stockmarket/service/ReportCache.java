@@ -0,0 +1,304 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.util.TradingCalendar;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Rendered CSV, Excel and PDF reports on local disk, addressed by a hash of the normalized
+ * request, the latest stored bar of every requested series and the latest completed session
+ * the request reaches into. New bars change the key, and so does a new session, which makes
+ * the next request render afresh and bring the stored history up to date. Entries never need
+ * invalidating; the least recently served ones are deleted once the cache exceeds
+ * {@code stockmarket.report-cache.max-bytes}. The key doubles as a weak ETag, letting
+ * clients revalidate with {@code If-None-Match}.
+ */
+@Component
+public class ReportCache {
+    private static final Logger log = LoggerFactory.getLogger(ReportCache.class);
+    private static final String SUFFIX = ".report";
+
+    private final PriceHistoryStore priceHistoryStore;
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    // Access-ordered, so iteration starts at the least recently served entry; guarded by this
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final Counter hits;
+    private final Counter notModified;
+    private final Counter misses;
+
+    public ReportCache(PriceHistoryStore priceHistoryStore, MeterRegistry meterRegistry,
+                       @Value("${stockmarket.report-cache.enabled:true}") boolean enabled,
+                       @Value("${stockmarket.report-cache.directory:${java.io.tmpdir}/stock-market-analyzer/reports}") String directory,
+                       @Value("${stockmarket.report-cache.max-bytes:536870912}") long maxBytes) throws IOException {
+        this.priceHistoryStore = priceHistoryStore;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.hits = meterRegistry.counter("report.cache.requests", "result", "hit");
+        this.notModified = meterRegistry.counter("report.cache.requests", "result", "not_modified");
+        this.misses = meterRegistry.counter("report.cache.requests", "result", "miss");
+        meterRegistry.gauge("report.cache.bytes", this, cache -> cache.currentBytes());
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            loadIndex();
+        }
+    }
+
+    /**
+     * Key of {@code request} rendered as {@code variant} (format and layout options) on the data
+     * stored right now, or {@code null} when caching is disabled.
+     */
+    public String key(String variant, AnalyticsRequest request) {
+        return key(variant, request, TradingCalendar.latestCompletedSession());
+    }
+
+    String key(String variant, AnalyticsRequest request, LocalDate latestSession) {
+        if (!enabled) return null;
+        // A range that ends before the latest session does not change when a new one closes
+        LocalDate session = request.getEndDate() != null && request.getEndDate().isBefore(latestSession)
+                ? request.getEndDate() : latestSession;
+        List<String> symbols = new ArrayList<>();
+        for (String symbol : request.getSymbols()) {
+            symbols.add(symbol.trim());
+        }
+        symbols.sort(Comparator.naturalOrder());
+        Map<String, LocalDate> versions = priceHistoryStore.latestDates(symbols);
+        StringBuilder canonical = new StringBuilder(variant)
+                .append('|').append(request.getMovingAveragePeriod())
+                .append('|').append(request.getVolatilityPeriod())
+                .append('|').append(request.getShortMAPeriod())
+                .append('|').append(request.getLongMAPeriod())
+                .append('|').append(request.getStartDate())
+                .append('|').append(request.getEndDate())
+                .append('|').append(session);
+        for (String symbol : symbols) {
+            canonical.append('|').append(symbol).append('@').append(versions.get(symbol.toUpperCase()));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Answers from the cache when it holds {@code key}: 304 if the client already has it,
+     * otherwise the stored bytes. Returns {@code false} when the report has to be rendered.
+     */
+    public boolean serve(String key, HttpServletRequest request, HttpServletResponse response,
+                         String contentType, String filename) throws IOException {
+        if (key == null) return false;
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses.increment();
+                return false;
+            }
+        }
+        String etag = etag(key);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            notModified.increment();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            return true;
+        }
+        Path file = file(key);
+        InputStream body;
+        try {
+            body = Files.newInputStream(file);
+        } catch (NoSuchFileException e) {
+            // Evicted since the lookup
+            misses.increment();
+            return false;
+        }
+        try (body) {
+            hits.increment();
+            response.setContentType(contentType);
+            response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setContentLengthLong(Files.size(file));
+            body.transferTo(response.getOutputStream());
+        }
+        return true;
+    }
+
+    /**
+     * Starts rendering {@code key}: everything written to {@link Capture#stream()} goes to
+     * {@code target} and to a temp file that {@link Capture#commit(boolean)} may keep.
+     */
+    public Capture capture(String key, HttpServletResponse response) throws IOException {
+        if (key != null) {
+            response.setHeader(HttpHeaders.ETAG, etag(key));
+        }
+        return new Capture(key, response.getOutputStream());
+    }
+
+    public final class Capture implements Closeable {
+        private final String key;
+        private final OutputStream target;
+        private final Path temp;
+        private final OutputStream copy;
+        private final OutputStream stream;
+        private boolean done;
+
+        private Capture(String key, OutputStream target) throws IOException {
+            this.key = key;
+            this.target = target;
+            this.temp = key != null ? Files.createTempFile(directory, "report-", ".tmp") : null;
+            this.copy = temp != null ? new BufferedOutputStream(Files.newOutputStream(temp)) : null;
+            this.stream = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    Capture.this.target.write(b);
+                    if (copy != null) copy.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    Capture.this.target.write(b, off, len);
+                    if (copy != null) copy.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    Capture.this.target.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // Writers close their stream when done; the response and the copy stay open
+                    flush();
+                }
+            };
+        }
+
+        /** Stream the renderer writes the report to. */
+        public OutputStream stream() {
+            return stream;
+        }
+
+        /** Keeps the rendered bytes when {@code store} is true, otherwise drops them. */
+        public void commit(boolean store) throws IOException {
+            if (done || temp == null) return;
+            done = true;
+            copy.close();
+            if (!store) {
+                Files.deleteIfExists(temp);
+                return;
+            }
+            long size = Files.size(temp);
+            if (size > maxBytes) {
+                Files.deleteIfExists(temp);
+                return;
+            }
+            Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            add(key, size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (done || temp == null) return;
+            done = true;
+            copy.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private synchronized void add(String key, long size) {
+        Long previous = entries.put(key, size);
+        totalBytes += size - (previous != null ? previous : 0);
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(key)) continue;
+            try {
+                Files.deleteIfExists(file(entry.getKey()));
+            } catch (IOException e) {
+                log.warn("Failed to delete cached report {}: {}", entry.getKey(), e.getMessage());
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private synchronized long currentBytes() {
+        return totalBytes;
+    }
+
+    /** Re-indexes reports left by a previous run, oldest first, and drops unfinished temp files. */
+    private void loadIndex() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+        List<Path> reports = new ArrayList<>();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(SUFFIX)) {
+                reports.add(file);
+            } else if (file.getFileName().toString().endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+            }
+        }
+        reports.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (Path file : reports) {
+            String name = file.getFileName().toString();
+            add(name.substring(0, name.length() - SUFFIX.length()), Files.size(file));
+        }
+        log.info("Report cache holds {} report(s), {} bytes", entries.size(), totalBytes);
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static String etag(String key) {
+        // Weak: a re-render after eviction is equivalent but not necessarily byte-identical
+        return "W/\"" + key + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(opaque)) return true;
+        }
+        return false;
+    }
+}
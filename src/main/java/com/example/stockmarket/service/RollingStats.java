@@ -0,0 +1,69 @@
+package com.example.stockmarket.service;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Fixed-size sliding window over a stream of values. Keeps a rolling sum for the mean and a
+ * Welford-style running sum of squared deviations for the population variance, so each
+ * {@link #add(double)} is O(1) and allocation free.
+ */
+final class RollingStats implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final double[] window;
+    private int count;
+    private int head;
+    private double sum;
+    private double mean;
+    private double m2;
+
+    RollingStats(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.window = new double[period];
+    }
+
+    /** Adds a value, evicting the oldest one once the window is full. */
+    void add(double value) {
+        if (count < window.length) {
+            window[(head + count) % window.length] = value;
+            count++;
+            sum += value;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            return;
+        }
+        double evicted = window[head];
+        window[head] = value;
+        head = (head + 1) % window.length;
+        sum += value - evicted;
+        double previousMean = mean;
+        mean += (value - evicted) / count;
+        m2 += (value - evicted) * (value - mean + evicted - previousMean);
+        if (m2 < 0) m2 = 0;
+    }
+
+    boolean isFull() {
+        return count == window.length;
+    }
+
+    int period() {
+        return window.length;
+    }
+
+    double mean() {
+        return sum / count;
+    }
+
+    double variance() {
+        return m2 / count;
+    }
+
+    double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+}
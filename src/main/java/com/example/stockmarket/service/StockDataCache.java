@@ -0,0 +1,137 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.StockData;
+import com.example.stockmarket.util.TradingCalendar;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Two-tier cache for fetched {@link StockData}: a size-bounded Caffeine (W-TinyLFU) L1 per
+ * process in front of a Redis L2 shared by all instances. Entries in both tiers expire at the
+ * next session close, when a new daily bar may appear. Only successful fetches are cached.
+ * Redis keeps a set of cache keys per symbol for eviction, and evictions are broadcast on a
+ * Redis channel so every instance drops its L1 copies too. L1 statistics are published as
+ * {@code cache.*{cache=stockData}}, L2 lookups as {@code stock.cache.l2{result=hit|miss}}.
+ */
+@Component
+public class StockDataCache {
+    private static final Logger log = LoggerFactory.getLogger(StockDataCache.class);
+    private static final String KEY_PREFIX = "stock-data:";
+    // Set of the Redis keys cached for one symbol
+    private static final String INDEX_PREFIX = "stock-data-keys:";
+    static final String EVICTION_CHANNEL = "stock-data-evictions";
+
+    private final Cache<String, StockData> local;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+
+    public StockDataCache(StringRedisTemplate redisTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                          RedisMessageListenerContainer listenerContainer,
+                          @Value("${stockmarket.cache.l1-max-entries:10000}") long maxEntries) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(Expiry.creating((String key, StockData value) -> untilNextClose()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "stockData");
+        this.remoteHits = meterRegistry.counter("stock.cache.l2", "result", "hit");
+        this.remoteMisses = meterRegistry.counter("stock.cache.l2", "result", "miss");
+        listenerContainer.addMessageListener((message, pattern) -> evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(EVICTION_CHANNEL));
+    }
+
+    public static String key(String function, String symbol, int historyDays) {
+        return key(function, symbol, String.valueOf(historyDays));
+    }
+
+    public static String key(String function, String symbol, String window) {
+        return function + ":" + symbol.toUpperCase() + ":" + window;
+    }
+
+    /** Returns a private copy of the cached entry, or {@code null} when L1 has nothing. */
+    public StockData getLocal(String key) {
+        StockData cached = local.getIfPresent(key);
+        return cached != null ? cached.copy() : null;
+    }
+
+    /** Looks the entry up in Redis and promotes a hit into L1. */
+    public StockData getRemote(String key) {
+        try {
+            String json = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+            if (json == null) {
+                remoteMisses.increment();
+                return null;
+            }
+            remoteHits.increment();
+            StockData data = objectMapper.readValue(json, StockData.class);
+            local.put(key, data);
+            return data.copy();
+        } catch (Exception e) {
+            remoteMisses.increment();
+            log.warn("Failed to read {} from Redis: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, StockData data) {
+        if (data.getClosingPrices() == null || data.getClosingPrices().isEmpty()) return;
+        StockData snapshot = data.copy();
+        local.put(key, snapshot);
+        try {
+            Duration ttl = untilNextClose();
+            String index = INDEX_PREFIX + data.getSymbol().toUpperCase();
+            redisTemplate.opsForValue().set(KEY_PREFIX + key, objectMapper.writeValueAsString(snapshot), ttl);
+            redisTemplate.opsForSet().add(index, KEY_PREFIX + key);
+            redisTemplate.expire(index, ttl);
+        } catch (Exception e) {
+            log.warn("Failed to write {} to Redis: {}", key, e.getMessage());
+        }
+    }
+
+    /** Drops every cached depth of {@code symbol} from Redis and from the L1 of every instance. */
+    public void evict(String symbol) {
+        evictLocal(symbol);
+        try {
+            String index = INDEX_PREFIX + symbol.toUpperCase();
+            Set<String> members = redisTemplate.opsForSet().members(index);
+            Set<String> keys = members != null ? new HashSet<>(members) : new HashSet<>();
+            keys.add(index);
+            redisTemplate.delete(keys);
+            redisTemplate.convertAndSend(EVICTION_CHANNEL, symbol.toUpperCase());
+            log.info("Evicted cached stock data for {} ({} Redis key(s))", symbol, keys.size() - 1);
+        } catch (Exception e) {
+            log.warn("Failed to evict {} from Redis: {}", symbol, e.getMessage());
+        }
+    }
+
+    private void evictLocal(String symbol) {
+        String marker = ":" + symbol.toUpperCase() + ":";
+        local.asMap().keySet().removeIf(key -> key.contains(marker));
+    }
+
+    private static Duration untilNextClose() {
+        return Duration.between(ZonedDateTime.now(TradingCalendar.MARKET_ZONE), TradingCalendar.nextSessionClose());
+    }
+}
@@ -1,83 +1,312 @@
 package com.example.stockmarket.service;
 
-import com.example.stockmarket.model.PortfolioStock;
+import com.example.stockmarket.model.PriceUpdate;
+import com.example.stockmarket.model.StockData;
 import com.example.stockmarket.repository.PortfolioStockRepository;
-import com.example.stockmarket.config.AlphaVantageConfig;
+import com.example.stockmarket.util.TradingCalendar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.data.redis.core.RedisTemplate;
 
 import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Nightly refresh of {@code PortfolioStock.currentPrice}. Works per distinct symbol rather than
+ * per position: one Redis MGET finds the prices cached today, only the misses are quoted
+ * upstream (at most {@code stockmarket.price-update.parallelism} at a time), new quotes are
+ * written back to Redis in one pipeline, and every position of a symbol is updated by a single
+ * batched {@code UPDATE ... WHERE symbol = ?}. Each new quote is also pushed to price stream
+ * subscribers together with the indicator states it rolled forward, and the written prices are
+ * applied to the materialized portfolio valuations.
+ */
 @Service
 public class StockPriceUpdaterService {
     private static final Logger logger = LoggerFactory.getLogger(StockPriceUpdaterService.class);
+    private static final Duration PRICE_TTL = Duration.ofHours(12);
+    private static final String RUN_KEY_PREFIX = "price-update:";
+    private static final Duration RUN_MARKER_TTL = Duration.ofDays(2);
+    private static final String UPDATE_PRICE_SQL = "update portfolio_stock set current_price = ? where symbol = ?";
+
     private final PortfolioStockRepository portfolioStockRepository;
-    private final RestTemplate restTemplate;
-    private final AlphaVantageConfig config;
+    private final MarketDataClient marketDataClient;
     private final RedisTemplate<String, Double> redisTemplate;
+    private final IndicatorStateStore indicatorStateStore;
+    private final PriceStreamService priceStreamService;
+    private final JdbcTemplate jdbcTemplate;
+    private final LeaseManager leaseManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PortfolioValuationCache valuationCache;
+    private final ExecutorService updateExecutorService;
+    private final int parallelism;
+    private final int shards;
+    private final Duration leaseTtl;
+    private final Duration maxRunTime;
+    private final boolean localFallback;
 
-    public StockPriceUpdaterService(PortfolioStockRepository portfolioStockRepository, RestTemplate restTemplate, AlphaVantageConfig config, RedisTemplate<String, Double> redisTemplate) {
+    public StockPriceUpdaterService(PortfolioStockRepository portfolioStockRepository, MarketDataClient marketDataClient, RedisTemplate<String, Double> redisTemplate, IndicatorStateStore indicatorStateStore, JdbcTemplate jdbcTemplate,
+                                    PriceStreamService priceStreamService, LeaseManager leaseManager, StringRedisTemplate stringRedisTemplate,
+                                    PortfolioValuationCache valuationCache,
+                                    @Qualifier("priceUpdateExecutorService") ExecutorService updateExecutorService,
+                                    @Value("${stockmarket.price-update.parallelism:8}") int parallelism,
+                                    @Value("${stockmarket.price-update.shards:16}") int shards,
+                                    @Value("${stockmarket.price-update.lease-ttl-ms:120000}") long leaseTtlMillis,
+                                    @Value("${stockmarket.price-update.max-run-ms:7200000}") long maxRunMillis,
+                                    @Value("${stockmarket.price-update.local-fallback:false}") boolean localFallback) {
         this.portfolioStockRepository = portfolioStockRepository;
-        this.restTemplate = restTemplate;
-        this.config = config;
+        this.marketDataClient = marketDataClient;
         this.redisTemplate = redisTemplate;
+        this.indicatorStateStore = indicatorStateStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.priceStreamService = priceStreamService;
+        this.leaseManager = leaseManager;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.valuationCache = valuationCache;
+        this.updateExecutorService = updateExecutorService;
+        this.parallelism = parallelism;
+        this.shards = Math.max(1, shards);
+        this.leaseTtl = Duration.ofMillis(leaseTtlMillis);
+        this.maxRunTime = Duration.ofMillis(maxRunMillis);
+        this.localFallback = localFallback;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> fetchApiResponse(String url) {
+    /**
+     * Starts the nightly run on its own thread. A run can wait on other nodes' shards for up to
+     * {@code stockmarket.price-update.max-run-ms}, which would otherwise block the scheduler.
+     */
+    @Scheduled(cron = "0 30 0 * * ?")
+    public void scheduleStockPriceUpdate() {
         try {
-            Map<String, Object> response = restTemplate.getForObject(url, Map.class);
-            return response != null ? response : new HashMap<>(); // Ensure response is never null
-        } catch (Exception e) {
-            logger.error("Failed to fetch API response for URL {}: {}", url, e.getMessage());
-            return new HashMap<>();
+            updateExecutorService.execute(this::updateStockPrices);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Price update not started: {}", e.getMessage());
         }
     }
 
-    @Scheduled(cron = "0 30 0 * * ?")
+    /**
+     * Runs on every node. Symbols are split into {@code shards} by hash and each shard is leased
+     * through Redis, so every shard is processed by exactly one node per run. A node keeps taking
+     * unfinished shards until all are marked done; a shard whose node died becomes available
+     * again once its lease expires. If Redis goes away mid-run, the shards this node has not
+     * finished are updated locally only when {@code stockmarket.price-update.local-fallback} is
+     * set; otherwise they wait for the next run, so an outage never has every node update every
+     * symbol.
+     */
     public void updateStockPrices() {
-        List<PortfolioStock> stocks = portfolioStockRepository.findAll();
-        for (PortfolioStock stock : stocks) {
-            try {
-                String symbol = stock.getSymbol();
-
-                // Check Redis cache for the stock price
-                Double cachedPrice = redisTemplate.opsForValue().get(symbol);
-                if (cachedPrice != null) {
-                    stock.setCurrentPrice(cachedPrice);
-                    portfolioStockRepository.save(stock);
-                    logger.info("Updated current price for {} from Redis cache: {}", symbol, cachedPrice);
-                    continue;
+        List<String> symbols = portfolioStockRepository.findDistinctSymbols();
+        String run = RUN_KEY_PREFIX + LocalDate.now(TradingCalendar.MARKET_ZONE);
+        long started = System.nanoTime();
+        long deadline = started + maxRunTime.toNanos();
+        int updated = 0;
+        Set<Integer> remaining = new TreeSet<>();
+        // Shards updated here, even if marking them done failed
+        Set<Integer> finished = new HashSet<>();
+        for (int shard = 0; shard < shards; shard++) {
+            remaining.add(shard);
+        }
+        try {
+            while (!remaining.isEmpty() && System.nanoTime() < deadline) {
+                boolean worked = false;
+                for (Iterator<Integer> it = remaining.iterator(); it.hasNext(); ) {
+                    int shard = it.next();
+                    String shardKey = run + ":shard:" + shard;
+                    if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(shardKey + ":done"))) {
+                        it.remove();
+                        continue;
+                    }
+                    try (LeaseManager.Lease lease = leaseManager.tryAcquire(shardKey + ":lease", leaseTtl)) {
+                        if (lease == null) continue; // Another node is on it
+                        worked = true;
+                        updated += updateSymbols(shardSymbols(symbols, shard));
+                        finished.add(shard);
+                        if (!lease.isLost()) {
+                            stringRedisTemplate.opsForValue().set(shardKey + ":done", leaseManager.getNodeId(), RUN_MARKER_TTL);
+                            it.remove();
+                        }
+                    }
+                }
+                if (!worked && !remaining.isEmpty()) {
+                    // Wait for shards held elsewhere to finish or for their leases to expire
+                    Thread.sleep(Math.max(1000, leaseTtl.toMillis() / 4));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RedisConnectionFailureException e) {
+            remaining.removeAll(finished);
+            if (localFallback) {
+                logger.warn("Shard leasing unavailable ({}), updating {} unfinished shard(s) locally", e.getMessage(), remaining.size());
+                List<String> unfinished = new ArrayList<>();
+                for (int shard : remaining) {
+                    unfinished.addAll(shardSymbols(symbols, shard));
                 }
+                updated += updateSymbols(unfinished);
+                remaining.clear();
+            } else {
+                logger.warn("Shard leasing unavailable ({}), leaving unfinished shards to the next run", e.getMessage());
+            }
+        }
+        if (!remaining.isEmpty()) {
+            logger.warn("Price update run {} ended with {} shard(s) unfinished", run, remaining.size());
+        }
+        logger.info("Updated current prices for {} symbol(s) on this node in {} ms", updated,
+                Duration.ofNanos(System.nanoTime() - started).toMillis());
+    }
 
-                // Fetch price from API if not in cache
-                String url = "https://www.alphavantage.co/query?function=GLOBAL_QUOTE&symbol=" + symbol + "&apikey=" + config.getApiKey();
-                Map<String, Object> response = fetchApiResponse(url);
-                Object globalQuoteObj = response.get("Global Quote");
-                if (globalQuoteObj instanceof Map<?, ?> globalQuote) {
-                    Object priceObj = globalQuote.get("05. price");
-                    if (priceObj instanceof String price) {
-                        Double currentPrice = Double.valueOf(price);
-                        stock.setCurrentPrice(currentPrice);
-                        portfolioStockRepository.save(stock);
-
-                        // Update Redis cache
-                        redisTemplate.opsForValue().set(symbol, currentPrice, Duration.ofHours(12));
-                        logger.info("Updated current price for {}: {}", symbol, currentPrice);
-                    }
-                } else {
-                    logger.warn("No valid data found for stock symbol: {}", symbol);
+    private List<String> shardSymbols(List<String> symbols, int shard) {
+        List<String> result = new ArrayList<>();
+        for (String symbol : symbols) {
+            // String.hashCode is specified, so every node assigns a symbol to the same shard
+            if (Math.floorMod(symbol.hashCode(), shards) == shard) {
+                result.add(symbol);
+            }
+        }
+        return result;
+    }
+
+    /** Refreshes the given symbols and returns how many received a price. */
+    int updateSymbols(List<String> symbols) {
+        if (symbols.isEmpty()) return 0;
+        Map<String, Double> prices = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        // Check Redis cache for all prices in one round trip
+        List<Double> cached = readCachedPrices(symbols);
+        for (int i = 0; i < symbols.size(); i++) {
+            Double price = cached != null ? cached.get(i) : null;
+            if (price != null) {
+                prices.put(symbols.get(i), price);
+            } else {
+                misses.add(symbols.get(i));
+            }
+        }
+        logger.info("{} price(s) served from Redis, {} to fetch", prices.size(), misses.size());
+
+        Map<String, Double> fetched = fetchPrices(misses);
+        prices.putAll(fetched);
+        cachePrices(fetched);
+        writePrices(prices);
+        return prices.size();
+    }
+
+    private List<Double> readCachedPrices(List<String> symbols) {
+        try {
+            return redisTemplate.opsForValue().multiGet(symbols);
+        } catch (DataAccessException e) {
+            logger.warn("Failed to read cached prices from Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Quotes the symbols upstream with at most {@code parallelism} requests outstanding. */
+    private Map<String, Double> fetchPrices(List<String> symbols) {
+        Map<String, Double> prices = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(parallelism);
+        List<CompletableFuture<Void>> pending = new ArrayList<>(symbols.size());
+        try {
+            for (String symbol : symbols) {
+                permits.acquire();
+                pending.add(fetchQuote(symbol)
+                        .thenAccept(quote -> recordQuote(symbol, quote, prices))
+                        .whenComplete((ignored, error) -> permits.release()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Price update interrupted after {} of {} symbol(s)", pending.size(), symbols.size());
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        return prices;
+    }
+
+    private CompletableFuture<Map<String, Object>> fetchQuote(String symbol) {
+        // Nightly refresh runs at batch priority so it never delays interactive requests
+        return marketDataClient.queryJson(MarketDataScheduler.Priority.BATCH, "GLOBAL_QUOTE", Map.of("symbol", symbol))
+                .thenApply(response -> response != null ? response : new HashMap<String, Object>()) // Ensure response is never null
+                .exceptionally(e -> {
+                    logger.error("Failed to fetch quote for {}: {}", symbol, e.getMessage());
+                    return new HashMap<>();
+                });
+    }
+
+    private void recordQuote(String symbol, Map<String, Object> response, Map<String, Double> prices) {
+        try {
+            Object globalQuoteObj = response.get("Global Quote");
+            if (globalQuoteObj instanceof Map<?, ?> globalQuote && globalQuote.get("05. price") instanceof String price) {
+                Double currentPrice = Double.valueOf(price);
+                prices.put(symbol, currentPrice);
+                logger.info("Fetched current price for {}: {}", symbol, currentPrice);
+
+                // Roll the stored indicator states forward by the new daily close
+                LocalDate date = null;
+                Map<String, StockData> indicators = new HashMap<>();
+                if (globalQuote.get("07. latest trading day") instanceof String tradingDay) {
+                    date = LocalDate.parse(tradingDay);
+                    indicatorStateStore.advance(symbol, date, currentPrice).forEach((parameters, state) -> {
+                        StockData values = new StockData(symbol, null);
+                        values.setLatestPrice(currentPrice);
+                        state.writeTo(values);
+                        indicators.put(parameters, values);
+                    });
                 }
-            } catch (Exception e) {
-                logger.error("Failed to update price for stock {}: {}", stock.getSymbol(), e.getMessage());
+                Double previousClose = globalQuote.get("08. previous close") instanceof String previous ? Double.valueOf(previous) : null;
+                priceStreamService.publish(new PriceUpdate(symbol, date, currentPrice, previousClose, indicators));
+            } else {
+                logger.warn("No valid data found for stock symbol: {}", symbol);
             }
+        } catch (Exception e) {
+            logger.error("Failed to update price for stock {}: {}", symbol, e.getMessage());
+        }
+    }
+
+    private void cachePrices(Map<String, Double> prices) {
+        if (prices.isEmpty()) return;
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    prices.forEach((symbol, price) -> operations.opsForValue().set(symbol, price, PRICE_TTL));
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            logger.warn("Failed to cache {} price(s) in Redis: {}", prices.size(), e.getMessage());
+        }
+    }
+
+    private void writePrices(Map<String, Double> prices) {
+        if (prices.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>(prices.size());
+        prices.forEach((symbol, price) -> rows.add(new Object[]{price, symbol}));
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_PRICE_SQL, rows);
+        int positions = 0;
+        for (int count : counts) {
+            positions += Math.max(count, 0);
         }
+        logger.info("Updated {} position(s) across {} symbol(s)", positions, prices.size());
+        valuationCache.pricesUpdated(prices);
     }
 }
@@ -1,10 +1,16 @@
 package com.example.stockmarket.service;
 
 import com.example.stockmarket.model.StockData;
+
+import java.time.LocalDate;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 public interface StockService {
-    Future<StockData> fetchStockData(String symbol);
+    CompletableFuture<StockData> fetchStockData(String symbol);
+    CompletableFuture<StockData> fetchStockData(String symbol, int historyDays);
+    /** Bars within {@code [startDate, endDate]} plus {@code warmUpBars} earlier bars for indicator look-back. */
+    CompletableFuture<StockData> fetchStockData(String symbol, LocalDate startDate, LocalDate endDate, int warmUpBars);
+    void evictCachedData(String symbol);
     List<Double> calculateMovingAverage(StockData data, int period);
 }
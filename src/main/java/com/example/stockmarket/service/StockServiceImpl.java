@@ -1,105 +1,221 @@
 package com.example.stockmarket.service;
 
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.model.PriceUpdate;
 import com.example.stockmarket.model.StockData;
-import com.example.stockmarket.config.AlphaVantageConfig;
-import lombok.RequiredArgsConstructor;
+import com.example.stockmarket.util.TradingCalendar;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Service
-@RequiredArgsConstructor
 public class StockServiceImpl implements StockService {
-    private final AlphaVantageConfig config;
     private final ExecutorService executorService;
-    private final RestTemplate restTemplate;
+    private final PriceHistoryStore priceHistoryStore;
+    private final StockDataCache stockDataCache;
+    private final MarketDataClient marketDataClient;
+    private final PriceStreamService priceStreamService;
+    // When a refresh that came back short of the latest session may ask upstream again, by symbol
+    private final Map<String, Long> refreshRetryAt = new ConcurrentHashMap<>();
+    // Fetches currently running, keyed by series function and symbol; concurrent callers share one
+    private final Map<String, CompletableFuture<StockData>> inFlight = new ConcurrentHashMap<>();
+    private final Counter fetchRequests;
+    private final Counter coalescedFetches;
     private static final Logger log = LoggerFactory.getLogger(StockServiceImpl.class);
 
-    private static final String ERROR_MESSAGE_KEY = "Error Message";
-    private static final String NOTE_KEY = "Note";
-    private static final String TIME_SERIES_KEY_PREFIX = "Time Series";
+    private static final int DEFAULT_HISTORY_DAYS = 30;
+    // Compact responses carry the latest 100 sessions, roughly 140 calendar days
+    private static final long COMPACT_WINDOW_CALENDAR_DAYS = 140;
+    // Upstream publishes the daily bar some time after the close, and not at all on holidays
+    static final long REFRESH_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final String TIME_SERIES_FUNCTION = "TIME_SERIES_DAILY";
+
+    /** A loaded series and whether the stored history covered everything the request needs. */
+    private record Loaded(StockData data, boolean complete) {}
+
+    public StockServiceImpl(ExecutorService executorService, MarketDataClient marketDataClient,
+                            PriceHistoryStore priceHistoryStore, StockDataCache stockDataCache,
+                            PriceStreamService priceStreamService, MeterRegistry meterRegistry) {
+        this.executorService = executorService;
+        this.priceHistoryStore = priceHistoryStore;
+        this.stockDataCache = stockDataCache;
+        this.marketDataClient = marketDataClient;
+        this.priceStreamService = priceStreamService;
+        this.fetchRequests = meterRegistry.counter("stock.fetch.requests");
+        this.coalescedFetches = meterRegistry.counter("stock.fetch.coalesced");
+        Gauge.builder("stock.fetch.coalescing.ratio", this,
+                        service -> service.fetchRequests.count() == 0 ? 0 : service.coalescedFetches.count() / service.fetchRequests.count())
+                .description("Share of fetch requests served by joining an in-flight fetch")
+                .register(meterRegistry);
+    }
 
     @Override
-    public Future<StockData> fetchStockData(String symbol) {
-        log.info("Fetching stock data for symbol: {}", symbol);
-        return executorService.submit(() -> fetchStockDataInternal(symbol));
+    public CompletableFuture<StockData> fetchStockData(String symbol) {
+        return fetchStockData(symbol, DEFAULT_HISTORY_DAYS);
     }
 
-    private StockData fetchStockDataInternal(String symbol) {
-        String apiKey = config.getApiKey();
-        String url = String.format(
-            "https://www.alphavantage.co/query?function=TIME_SERIES_DAILY&symbol=%s&apikey=%s",
-            symbol, apiKey
-        );
+    @Override
+    public CompletableFuture<StockData> fetchStockData(String symbol, int historyDays) {
+        return fetch(symbol, StockDataCache.key(TIME_SERIES_FUNCTION, symbol, historyDays), null,
+                () -> priceHistoryStore.loadLatest(symbol, historyDays));
+    }
+
+    @Override
+    public CompletableFuture<StockData> fetchStockData(String symbol, LocalDate startDate, LocalDate endDate, int warmUpBars) {
+        String window = startDate + ".." + endDate + "+" + warmUpBars;
+        return fetch(symbol, StockDataCache.key(TIME_SERIES_FUNCTION, symbol, window), endDate,
+                () -> priceHistoryStore.load(symbol, startDate, endDate, warmUpBars));
+    }
+
+    /**
+     * Serves {@code key} from the cache or a single shared fetch that brings the stored history
+     * up to date (through {@code needThrough} when given) and then reads it with {@code loader}.
+     */
+    private CompletableFuture<StockData> fetch(String symbol, String key, LocalDate needThrough, Supplier<PriceSeries> loader) {
+        fetchRequests.increment();
+        StockData cached = stockDataCache.getLocal(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<StockData> fetch = new CompletableFuture<>();
+        CompletableFuture<StockData> existing = inFlight.putIfAbsent(key, fetch);
+        if (existing != null) {
+            coalescedFetches.increment();
+            log.debug("Joining in-flight fetch for {}", key);
+        } else {
+            log.info("Fetching stock data for symbol: {}", symbol);
+            CompletableFuture<StockData> remote;
+            try {
+                remote = CompletableFuture.supplyAsync(() -> stockDataCache.getRemote(key), executorService);
+            } catch (RejectedExecutionException e) {
+                // Otherwise the entry would stay behind and every later caller would wait on it forever
+                inFlight.remove(key, fetch);
+                fetch.completeExceptionally(e);
+                return fetch;
+            }
+            remote.thenCompose(data -> data != null ? CompletableFuture.completedFuture(data)
+                            : fetchStockDataInternal(symbol, needThrough, loader).thenApply(loaded -> {
+                                // Stored history served after a failed or short refresh is not kept until the next close
+                                if (loaded.complete()) stockDataCache.put(key, loaded.data());
+                                return loaded.data();
+                            }))
+                    .whenComplete((data, error) -> {
+                        inFlight.remove(key, fetch);
+                        if (error != null) {
+                            fetch.completeExceptionally(error);
+                        } else {
+                            fetch.complete(data);
+                        }
+                    });
+        }
+        // Callers decorate the result with their own analytics, so each gets a private copy
+        return (existing != null ? existing : fetch).thenApply(StockData::copy);
+    }
+
+    @Override
+    public void evictCachedData(String symbol) {
+        stockDataCache.evict(symbol);
+    }
+
+    private CompletableFuture<Loaded> fetchStockDataInternal(String symbol, LocalDate needThrough, Supplier<PriceSeries> loader) {
+        LocalDate latestStored;
+        LocalDate expected = TradingCalendar.latestCompletedSession();
+        // A range that ends in the past is served from the store without asking upstream
+        LocalDate required = needThrough != null && needThrough.isBefore(expected) ? needThrough : expected;
         try {
-            Map<LocalDate, Double> prices = new TreeMap<>();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = restTemplate.getForObject(url, Map.class);
-            if (response == null) {
-                log.error("No response from Alpha Vantage API for symbol: {}", symbol);
-                return errorStockData(symbol, "No response from Alpha Vantage API");
+            latestStored = priceHistoryStore.latestDate(symbol);
+            if (!needsRefresh(latestStored, required, refreshRetryAt.get(symbol.toUpperCase()), System.currentTimeMillis())) {
+                boolean complete = latestStored != null && !latestStored.isBefore(required);
+                return CompletableFuture.completedFuture(new Loaded(loadStored(symbol, loader), complete));
             }
-            if (response.containsKey(NOTE_KEY)) {
-                log.warn("API rate limit reached for symbol: {}. Note: {}", symbol, response.get(NOTE_KEY));
-                return errorStockData(symbol, "API rate limit reached: " + response.get(NOTE_KEY));
+        } catch (Exception e) {
+            log.error("Exception while fetching stock data for symbol: {}. Exception: {}", symbol, e.getMessage());
+            return CompletableFuture.completedFuture(new Loaded(errorStockData(symbol, "Exception: " + e.getMessage()), false));
+        }
+        return fetchDailyBars(symbol, latestStored).thenApplyAsync(update -> {
+            if (update.getClosingPrices() == null) {
+                if (latestStored == null) return new Loaded(update, false);
+                log.warn("Serving stored history for {} after failed refresh: {}", symbol, update.getStatusMessage());
+                return new Loaded(loadStored(symbol, loader), false);
             }
-            if (response.containsKey(ERROR_MESSAGE_KEY)) {
-                log.error("API error for symbol: {}. Error Message: {}", symbol, response.get(ERROR_MESSAGE_KEY));
-                return errorStockData(symbol, "API error: " + response.get(ERROR_MESSAGE_KEY));
+            PriceSeries bars = update.getClosingPrices();
+            priceHistoryStore.append(symbol, bars);
+            if (!bars.isEmpty()) {
+                stockDataCache.evict(symbol);
+                Double previousClose = bars.size() > 1 ? Double.valueOf(bars.closeAt(bars.size() - 2)) : null;
+                priceStreamService.publish(new PriceUpdate(symbol.toUpperCase(), bars.lastDate(), bars.latestClose(), previousClose, Map.of()));
             }
-            // Find the time series key dynamically
-            String timeSeriesKey = response.keySet().stream()
-                .filter(k -> k.contains(TIME_SERIES_KEY_PREFIX))
-                .findFirst().orElse(null);
-            if (timeSeriesKey != null) {
-                @SuppressWarnings("unchecked")
-                Map<String, Map<String, String>> timeSeries = (Map<String, Map<String, String>>) response.get(timeSeriesKey);
-                // Sort dates descending (most recent first)
-                List<String> sortedDates = new ArrayList<>(timeSeries.keySet());
-                sortedDates.sort(Comparator.reverseOrder());
-                int count = 0;
-                for (String dateStr : sortedDates) {
-                    LocalDate date = parseDateSafe(dateStr);
-                    Double close = parseDoubleSafe(timeSeries.get(dateStr).get("4. close"));
-                    if (date != null && close != null) {
-                        prices.put(date, close);
-                        count++;
-                    }
-                    if (count >= 30) break; // Limit to most recent 30 valid days
-                }
-                log.info("Successfully fetched stock data for symbol: {}", symbol);
-                return new StockData(symbol, prices);
+            if (reachesSession(bars, expected)) {
+                refreshRetryAt.remove(symbol.toUpperCase());
             } else {
-                log.error("Unexpected API response structure for symbol: {}. Response keys: {}", symbol, response.keySet());
-                return errorStockData(symbol, "Unexpected API response structure: " + response.keySet());
+                // Holidays and late bars would otherwise refetch on every request
+                refreshRetryAt.put(symbol.toUpperCase(), System.currentTimeMillis() + REFRESH_RETRY_MILLIS);
             }
-        } catch (Exception e) {
-            log.error("Exception while fetching stock data for symbol: {}. Exception: {}", symbol, e.getMessage());
-            return errorStockData(symbol, "Exception: " + e.getMessage());
-        }
+            LocalDate newest = bars.isEmpty() ? latestStored : bars.lastDate();
+            return new Loaded(loadStored(symbol, loader), newest != null && !newest.isBefore(required));
+        }, executorService).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("Exception while fetching stock data for symbol: {}. Exception: {}", symbol, cause.getMessage());
+            return new Loaded(errorStockData(symbol, "Exception: " + cause.getMessage()), false);
+        });
     }
 
-    private LocalDate parseDateSafe(String dateStr) {
-        try {
-            return LocalDate.parse(dateStr);
-        } catch (Exception e) {
-            log.warn("Failed to parse date: {}", dateStr);
-            return null;
-        }
+    /**
+     * Whether stored history ending at {@code latestStored} has to be refreshed upstream to cover
+     * {@code required}: it is short of it, and no earlier refresh that came back short of the
+     * latest session is still backing off until {@code retryAt}.
+     */
+    static boolean needsRefresh(LocalDate latestStored, LocalDate required, Long retryAt, long now) {
+        if (latestStored != null && !latestStored.isBefore(required)) return false;
+        return retryAt == null || now >= retryAt;
     }
 
-    private Double parseDoubleSafe(String doubleStr) {
-        try {
-            return Double.parseDouble(doubleStr);
-        } catch (Exception e) {
-            log.warn("Failed to parse double: {}", doubleStr);
-            return null;
-        }
+    /** Whether freshly fetched {@code bars} bring the history up to the {@code expected} session. */
+    static boolean reachesSession(PriceSeries bars, LocalDate expected) {
+        return !bars.isEmpty() && !bars.lastDate().isBefore(expected);
+    }
+
+    private StockData loadStored(String symbol, Supplier<PriceSeries> loader) {
+        PriceSeries prices = loader.get();
+        log.info("Successfully fetched stock data for symbol: {}", symbol);
+        return new StockData(symbol, prices);
+    }
+
+    /**
+     * Fetches the daily bars newer than {@code after} from Alpha Vantage. A first backfill, or a
+     * gap longer than the compact window, asks for the full history; otherwise the compact
+     * response (latest 100 bars) is enough. Failures complete normally with an error StockData.
+     */
+    private CompletableFuture<StockData> fetchDailyBars(String symbol, LocalDate after) {
+        boolean full = after == null || ChronoUnit.DAYS.between(after, LocalDate.now()) > COMPACT_WINDOW_CALENDAR_DAYS;
+        Map<String, String> params = Map.of("symbol", symbol, "outputsize", full ? "full" : "compact");
+        return marketDataClient.query(MarketDataScheduler.Priority.INTERACTIVE, TIME_SERIES_FUNCTION, params,
+                        new DailySeriesParser(after))
+                .thenApply(result -> {
+                    if (result.error() != null) {
+                        log.error("Failed to fetch daily bars for symbol: {}. {}", symbol, result.error());
+                        return errorStockData(symbol, result.error());
+                    }
+                    return new StockData(symbol, result.bars());
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof MarketDataScheduler.RateLimitedException) {
+                        log.warn("API rate limit reached for symbol: {}. Note: {}", symbol, cause.getMessage());
+                        return errorStockData(symbol, "API rate limit reached: " + cause.getMessage());
+                    }
+                    log.error("Exception while fetching stock data for symbol: {}. Exception: {}", symbol, cause.getMessage());
+                    return errorStockData(symbol, "Exception: " + cause.getMessage());
+                });
     }
 
     private StockData errorStockData(String symbol, String message) {
@@ -112,36 +228,38 @@ public class StockServiceImpl implements StockService {
 
     @Override
     public List<Double> calculateMovingAverage(StockData data, int period) {
-        List<Double> prices = new ArrayList<>(data.getClosingPrices().values());
-        List<Double> movingAverages = new ArrayList<>();
-        for (int i = 0; i <= prices.size() - period; i++) {
-            double sum = 0;
-            for (int j = i; j < i + period; j++) {
-                sum += prices.get(j);
-            }
-            movingAverages.add(sum / period);
+        PriceSeries prices = data.getClosingPrices();
+        List<Double> movingAverages = new ArrayList<>(Math.max(0, prices.size() - period + 1));
+        RollingStats window = new RollingStats(period);
+        for (int i = 0; i < prices.size(); i++) {
+            window.add(prices.closeAt(i));
+            if (window.isFull()) movingAverages.add(window.mean());
         }
         return movingAverages;
     }
 
     public Double calculateVolatility(StockData data, int period) {
-        List<Double> prices = new ArrayList<>(data.getClosingPrices().values());
+        PriceSeries prices = data.getClosingPrices();
         if (prices.size() < period) return null;
-        List<Double> subList = prices.subList(prices.size() - period, prices.size());
-        double mean = subList.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-        double variance = subList.stream().mapToDouble(p -> Math.pow(p - mean, 2)).sum() / period;
-        return Math.sqrt(variance);
+        return standardDeviation(prices, prices.size() - period, period);
     }
 
     public double simulateSimpleMovingAverageStrategy(StockData data, int shortPeriod, int longPeriod) {
-        List<Double> prices = new ArrayList<>(data.getClosingPrices().values());
+        PriceSeries prices = data.getClosingPrices();
         if (prices.size() < longPeriod) return 0.0;
         double cash = 10000.0;
         double shares = 0.0;
-        for (int i = longPeriod; i < prices.size(); i++) {
-            double shortMA = prices.subList(i - shortPeriod, i).stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-            double longMA = prices.subList(i - longPeriod, i).stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-            double price = prices.get(i);
+        RollingStats shortWindow = new RollingStats(shortPeriod);
+        RollingStats longWindow = new RollingStats(longPeriod);
+        for (int i = 0; i < prices.size(); i++) {
+            double price = prices.closeAt(i);
+            // Both windows end at the previous bar when the signal is evaluated
+            boolean ready = i >= longPeriod;
+            double shortMA = ready ? shortWindow.mean() : 0;
+            double longMA = ready ? longWindow.mean() : 0;
+            shortWindow.add(price);
+            longWindow.add(price);
+            if (!ready) continue;
             if (shortMA > longMA && cash >= price) {
                 shares = cash / price;
                 cash = 0;
@@ -152,36 +270,36 @@ public class StockServiceImpl implements StockService {
         }
         // Liquidate at last price
         if (shares > 0) {
-            cash = shares * prices.get(prices.size() - 1);
+            cash = shares * prices.closeAt(prices.size() - 1);
         }
         return cash;
     }
 
     public Double calculateEMA(StockData data, int period) {
-        List<Double> prices = new ArrayList<>(data.getClosingPrices().values());
+        PriceSeries prices = data.getClosingPrices();
         if (prices.size() < period) return null;
         double multiplier = 2.0 / (period + 1);
-        double ema = prices.get(0);
+        double ema = prices.closeAt(0);
         for (int i = 1; i < prices.size(); i++) {
-            ema = ((prices.get(i) - ema) * multiplier) + ema;
+            ema = ((prices.closeAt(i) - ema) * multiplier) + ema;
         }
         return ema;
     }
 
     public Double calculateRSI(StockData data, int period) {
-        List<Double> prices = new ArrayList<>(data.getClosingPrices().values());
+        PriceSeries prices = data.getClosingPrices();
         if (prices.size() <= period) return null;
         double gain = 0;
         double loss = 0;
         for (int i = 1; i <= period; i++) {
-            double diff = prices.get(i) - prices.get(i - 1);
+            double diff = prices.closeAt(i) - prices.closeAt(i - 1);
             if (diff >= 0) gain += diff;
             else loss -= diff;
         }
         gain /= period;
         loss /= period;
         for (int i = period + 1; i < prices.size(); i++) {
-            double diff = prices.get(i) - prices.get(i - 1);
+            double diff = prices.closeAt(i) - prices.closeAt(i - 1);
             if (diff >= 0) {
                 gain = (gain * (period - 1) + diff) / period;
                 loss = (loss * (period - 1)) / period;
@@ -196,40 +314,37 @@ public class StockServiceImpl implements StockService {
     }
 
     public List<Double> calculateBollingerUpper(StockData data, int period, double numStdDev) {
-        List<Double> upperBand = new ArrayList<>();
-        List<Double> closes = new ArrayList<>(data.getClosingPrices().values());
-        for (int i = 0; i <= closes.size() - period; i++) {
-            List<Double> window = closes.subList(i, i + period);
-            double mean = window.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-            double std = Math.sqrt(window.stream().mapToDouble(p -> Math.pow(p - mean, 2)).sum() / period);
-            upperBand.add(mean + numStdDev * std);
-        }
-        return upperBand;
+        return calculateBollingerBand(data.getClosingPrices(), period, numStdDev);
     }
 
     public List<Double> calculateBollingerLower(StockData data, int period, double numStdDev) {
-        List<Double> lowerBand = new ArrayList<>();
-        List<Double> closes = new ArrayList<>(data.getClosingPrices().values());
-        for (int i = 0; i <= closes.size() - period; i++) {
-            List<Double> window = closes.subList(i, i + period);
-            double mean = window.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-            double std = Math.sqrt(window.stream().mapToDouble(p -> Math.pow(p - mean, 2)).sum() / period);
-            lowerBand.add(mean - numStdDev * std);
+        return calculateBollingerBand(data.getClosingPrices(), period, -numStdDev);
+    }
+
+    private List<Double> calculateBollingerBand(PriceSeries closes, int period, double offsetStdDev) {
+        List<Double> band = new ArrayList<>(Math.max(0, closes.size() - period + 1));
+        RollingStats window = new RollingStats(period);
+        for (int i = 0; i < closes.size(); i++) {
+            window.add(closes.closeAt(i));
+            if (window.isFull()) band.add(window.mean() + offsetStdDev * window.standardDeviation());
         }
-        return lowerBand;
+        return band;
     }
 
     public List<Double> calculateMACD(StockData data, int shortPeriod, int longPeriod) {
-        List<Double> closes = new ArrayList<>(data.getClosingPrices().values());
-        List<Double> macd = new ArrayList<>();
-        List<Double> shortEma = calculateEMAList(closes, shortPeriod);
-        List<Double> longEma = calculateEMAList(closes, longPeriod);
-        for (int i = 0; i < closes.size(); i++) {
-            if (i < longEma.size()) {
-                macd.add(shortEma.get(i) - longEma.get(i));
-            } else {
-                macd.add(0.0);
-            }
+        PriceSeries closes = data.getClosingPrices();
+        List<Double> macd = new ArrayList<>(closes.size());
+        if (closes.isEmpty()) return macd;
+        double shortMultiplier = 2.0 / (shortPeriod + 1);
+        double longMultiplier = 2.0 / (longPeriod + 1);
+        double shortEma = closes.closeAt(0);
+        double longEma = shortEma;
+        macd.add(0.0);
+        for (int i = 1; i < closes.size(); i++) {
+            double price = closes.closeAt(i);
+            shortEma = (price - shortEma) * shortMultiplier + shortEma;
+            longEma = (price - longEma) * longMultiplier + longEma;
+            macd.add(shortEma - longEma);
         }
         return macd;
     }
@@ -250,4 +365,12 @@ public class StockServiceImpl implements StockService {
         }
         return ema;
     }
+
+    private static double standardDeviation(PriceSeries prices, int from, int period) {
+        RollingStats window = new RollingStats(period);
+        for (int i = from; i < from + period; i++) {
+            window.add(prices.closeAt(i));
+        }
+        return window.standardDeviation();
+    }
 }
@@ -1,14 +1,20 @@
 package com.example.stockmarket.util;
 
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
 import com.example.stockmarket.model.StockData;
+import com.example.stockmarket.service.IndicatorEngine;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.Map;
 
 public class CsvExportUtil {
+    private static final String[] SUMMARY_HEADER = {"Symbol", "Latest Price", "Moving Average", "EMA", "RSI", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status Message"};
+    private static final String[] SERIES_HEADER = {"Symbol", "Date", "Close", "Moving Average", "EMA", "RSI", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status Message"};
 
     // Private constructor to prevent instantiation
     private CsvExportUtil() {
@@ -16,24 +22,67 @@ public class CsvExportUtil {
     }
 
     public static void writeStockDataToCsv(Map<String, StockData> data, PrintWriter writer) throws IOException {
-        try (CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.builder()
-                .setHeader("Symbol", "Latest Price", "Moving Average", "EMA", "RSI", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status Message")
-                .build())) {
+        try (CSVPrinter csvPrinter = openCsv(writer, false)) {
             for (StockData stock : data.values()) {
-                csvPrinter.printRecord(
-                        stock.getSymbol(),
-                        stock.getLatestPrice(),
-                        stock.getMovingAverage(),
-                        stock.getEma(),
-                        stock.getRsi(),
-                        stock.getVolatility(),
-                        stock.getBollingerUpper(),
-                        stock.getBollingerLower(),
-                        stock.getMacd(),
-                        stock.getMacdSignal(),
-                        stock.getStatusMessage()
-                );
+                writeSummaryRow(csvPrinter, stock);
             }
         }
     }
+
+    /**
+     * Starts a CSV on {@code writer} for rows written one symbol at a time: the summary layout
+     * (one row per symbol) or, with {@code perDate}, the long layout with one row per symbol and
+     * date. The caller flushes the printer whenever a chunk should go out.
+     */
+    public static CSVPrinter openCsv(Writer writer, boolean perDate) throws IOException {
+        return new CSVPrinter(writer, CSVFormat.DEFAULT.builder()
+                .setHeader(perDate ? SERIES_HEADER : SUMMARY_HEADER)
+                .build());
+    }
+
+    public static void writeSummaryRow(CSVPrinter csvPrinter, StockData stock) throws IOException {
+        csvPrinter.printRecord(
+                stock.getSymbol(),
+                stock.getLatestPrice(),
+                stock.getMovingAverage(),
+                stock.getEma(),
+                stock.getRsi(),
+                stock.getVolatility(),
+                stock.getBollingerUpper(),
+                stock.getBollingerLower(),
+                stock.getMacd(),
+                stock.getMacdSignal(),
+                stock.getStatusMessage()
+        );
+    }
+
+    /**
+     * Writes one long-layout row per date of {@code stock}'s closing prices, with the indicator
+     * values as of that date. {@code history} supplies the warm-up bars before the first date.
+     * A symbol without prices gets a single row carrying its status message.
+     */
+    public static void writeSeriesRows(CSVPrinter csvPrinter, StockData stock, PriceSeries history, AnalyticsRequest request) throws IOException {
+        PriceSeries prices = stock.getClosingPrices();
+        if (prices == null || prices.isEmpty()) {
+            csvPrinter.printRecord(stock.getSymbol(), null, null, null, null, null, null, null, null, null, null, stock.getStatusMessage());
+            return;
+        }
+        IndicatorEngine.forEachBar(stock.getSymbol(), history != null ? history : prices, request, prices.firstDate(), (date, close, values) -> {
+            if (date.isAfter(prices.lastDate())) return;
+            csvPrinter.printRecord(
+                    stock.getSymbol(),
+                    date,
+                    close,
+                    values.getMovingAverage(),
+                    values.getEma(),
+                    values.getRsi(),
+                    values.getVolatility(),
+                    values.getBollingerUpper(),
+                    values.getBollingerLower(),
+                    values.getMacd(),
+                    values.getMacdSignal(),
+                    null
+            );
+        });
+    }
 }
@@ -0,0 +1,63 @@
+package com.example.stockmarket.util;
+
+import com.example.stockmarket.model.AddStockRequest;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CsvImportUtil {
+
+    // Private constructor to prevent instantiation
+    private CsvImportUtil() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Reads positions from a CSV with a header row naming the {@code symbol}, {@code quantity}
+     * and {@code buyPrice} columns (any order and case). Empty cells are read as {@code null}.
+     *
+     * @throws IllegalArgumentException if the header lacks the symbol column or a number is malformed
+     */
+    public static List<AddStockRequest> readPositions(Reader reader) throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .setIgnoreHeaderCase(true)
+                .setIgnoreEmptyLines(true)
+                .setTrim(true)
+                .build();
+        List<AddStockRequest> positions = new ArrayList<>();
+        try (CSVParser parser = CSVParser.parse(reader, format)) {
+            if (!parser.getHeaderMap().containsKey("symbol")) {
+                throw new IllegalArgumentException("CSV header must include a symbol column");
+            }
+            boolean hasQuantity = parser.getHeaderMap().containsKey("quantity");
+            boolean hasBuyPrice = parser.getHeaderMap().containsKey("buyPrice");
+            for (CSVRecord record : parser) {
+                AddStockRequest position = new AddStockRequest();
+                position.setSymbol(record.get("symbol"));
+                try {
+                    position.setQuantity(hasQuantity ? parseInteger(record.get("quantity")) : null);
+                    position.setBuyPrice(hasBuyPrice ? parseDouble(record.get("buyPrice")) : null);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Row " + record.getRecordNumber() + ": " + e.getMessage(), e);
+                }
+                positions.add(position);
+            }
+        }
+        return positions;
+    }
+
+    private static Integer parseInteger(String value) {
+        return value == null || value.isEmpty() ? null : Integer.valueOf(value);
+    }
+
+    private static Double parseDouble(String value) {
+        return value == null || value.isEmpty() ? null : Double.valueOf(value);
+    }
+}
@@ -1,12 +1,23 @@
 package com.example.stockmarket.util;
 
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
 import com.example.stockmarket.model.StockData;
+import com.example.stockmarket.service.IndicatorEngine;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class ExcelExportUtil {
 
@@ -47,4 +58,157 @@ public class ExcelExportUtil {
             workbook.write(out);
         }
     }
+
+    /**
+     * Opens a streaming workbook that keeps only {@code rowWindow} rows per sheet in memory and
+     * spills the rest to (optionally gzip-compressed) temp files. Rows are added one symbol at a
+     * time; {@code perDate} selects one row per symbol and date, and {@code sheetPerSymbol} gives
+     * every symbol of such an export its own sheet.
+     */
+    public static StreamingWriter openStreaming(int rowWindow, boolean compressTempFiles, boolean perDate, boolean sheetPerSymbol) {
+        return new StreamingWriter(rowWindow, compressTempFiles, perDate, sheetPerSymbol);
+    }
+
+    public static final class StreamingWriter implements Closeable {
+        private static final String[] SUMMARY_HEADER = {"Symbol", "Latest Price", "EMA", "RSI", "Moving Average", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status Message"};
+        private static final String[] SERIES_HEADER = {"Symbol", "Date", "Close", "Moving Average", "EMA", "RSI", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status Message"};
+        private static final String SHEET_NAME = "Stock Analysis";
+        private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+        private final SXSSFWorkbook workbook;
+        private final boolean perDate;
+        private final boolean sheetPerSymbol;
+        // Created once per workbook; a style per cell would bloat styles.xml and the heap
+        private final CellStyle headerStyle;
+        private final CellStyle numberStyle;
+        private final CellStyle dateStyle;
+        private final Set<String> sheetNames = new HashSet<>();
+        private SXSSFSheet sheet;
+        private String sheetBase;
+        private int rowIdx;
+
+        private StreamingWriter(int rowWindow, boolean compressTempFiles, boolean perDate, boolean sheetPerSymbol) {
+            this.workbook = new SXSSFWorkbook(null, rowWindow, compressTempFiles);
+            this.perDate = perDate;
+            this.sheetPerSymbol = perDate && sheetPerSymbol;
+            Font bold = workbook.createFont();
+            bold.setBold(true);
+            this.headerStyle = workbook.createCellStyle();
+            headerStyle.setFont(bold);
+            DataFormat format = workbook.createDataFormat();
+            this.numberStyle = workbook.createCellStyle();
+            numberStyle.setDataFormat(format.getFormat("#,##0.00##"));
+            this.dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(format.getFormat("yyyy-mm-dd"));
+        }
+
+        public void writeSummary(StockData stock) throws IOException {
+            Row row = nextRow();
+            row.createCell(0).setCellValue(stock.getSymbol());
+            number(row, 1, stock.getLatestPrice());
+            number(row, 2, stock.getEma());
+            number(row, 3, stock.getRsi());
+            number(row, 4, stock.getMovingAverage());
+            number(row, 5, stock.getVolatility());
+            number(row, 6, stock.getBollingerUpper());
+            number(row, 7, stock.getBollingerLower());
+            number(row, 8, stock.getMacd());
+            number(row, 9, stock.getMacdSignal());
+            row.createCell(10).setCellValue(stock.getStatusMessage() != null ? stock.getStatusMessage() : "");
+        }
+
+        /**
+         * Writes one row per date of {@code stock}'s closing prices with the indicator values as
+         * of that date; {@code history} supplies the warm-up bars before the first date.
+         */
+        public void writeSeries(StockData stock, PriceSeries history, AnalyticsRequest request) throws IOException {
+            if (sheetPerSymbol) {
+                startSheet(stock.getSymbol(), uniqueSheetName(stock.getSymbol()));
+            }
+            PriceSeries prices = stock.getClosingPrices();
+            if (prices == null || prices.isEmpty()) {
+                Row row = nextRow();
+                row.createCell(0).setCellValue(stock.getSymbol());
+                row.createCell(11).setCellValue(stock.getStatusMessage() != null ? stock.getStatusMessage() : "");
+                return;
+            }
+            LocalDate last = prices.lastDate();
+            IndicatorEngine.forEachBar(stock.getSymbol(), history != null ? history : prices, request, prices.firstDate(), (date, close, values) -> {
+                if (date.isAfter(last)) return;
+                Row row = nextRow();
+                row.createCell(0).setCellValue(stock.getSymbol());
+                Cell dateCell = row.createCell(1);
+                dateCell.setCellValue(date);
+                dateCell.setCellStyle(dateStyle);
+                number(row, 2, close);
+                number(row, 3, values.getMovingAverage());
+                number(row, 4, values.getEma());
+                number(row, 5, values.getRsi());
+                number(row, 6, values.getVolatility());
+                number(row, 7, values.getBollingerUpper());
+                number(row, 8, values.getBollingerLower());
+                number(row, 9, values.getMacd());
+                number(row, 10, values.getMacdSignal());
+            });
+        }
+
+        /** Writes the workbook to {@code out}; the temp files are removed on {@link #close()}. */
+        public void finish(OutputStream out) throws IOException {
+            if (sheet == null) {
+                startSheet(SHEET_NAME, SHEET_NAME);
+            }
+            workbook.write(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Also deletes the temp files backing the flushed rows
+            workbook.close();
+        }
+
+        private Row nextRow() throws IOException {
+            if (sheet == null) {
+                startSheet(SHEET_NAME, SHEET_NAME);
+            } else if (rowIdx == MAX_ROWS) {
+                // A sheet holds at most 1,048,576 rows; continue on another one
+                startSheet(sheetBase, uniqueSheetName(sheetBase));
+            }
+            return sheet.createRow(rowIdx++);
+        }
+
+        private void startSheet(String base, String name) throws IOException {
+            if (sheet != null) {
+                sheet.flushRows(); // The finished sheet no longer needs its row window in memory
+            }
+            sheet = workbook.createSheet(name);
+            sheetBase = base;
+            sheetNames.add(name.toLowerCase());
+            String[] columns = perDate ? SERIES_HEADER : SUMMARY_HEADER;
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < columns.length; i++) {
+                Cell cell = header.createCell(i);
+                cell.setCellValue(columns[i]);
+                cell.setCellStyle(headerStyle);
+            }
+            rowIdx = 1;
+        }
+
+        private String uniqueSheetName(String base) {
+            String safe = WorkbookUtil.createSafeSheetName(base != null && !base.isBlank() ? base : SHEET_NAME);
+            String name = safe;
+            // Sheet names are case-insensitive and capped at 31 characters
+            for (int i = 2; sheetNames.contains(name.toLowerCase()); i++) {
+                String suffix = " (" + i + ")";
+                name = safe.substring(0, Math.min(safe.length(), 31 - suffix.length())) + suffix;
+            }
+            return name;
+        }
+
+        private void number(Row row, int column, Double value) {
+            if (value == null) return;
+            Cell cell = row.createCell(column);
+            cell.setCellValue(value);
+            cell.setCellStyle(numberStyle);
+        }
+    }
 }
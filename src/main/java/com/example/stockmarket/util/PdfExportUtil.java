@@ -1,145 +1,243 @@
 package com.example.stockmarket.util;
 
 import com.example.stockmarket.model.StockData;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
-import jakarta.servlet.ServletOutputStream;
 import java.awt.Color;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class PdfExportUtil {
+    private static final float MARGIN = 40;
+    private static final float TABLE_TOP_Y = PDRectangle.LETTER.getHeight() - MARGIN;
+    private static final float MIN_ROW_HEIGHT = 18;
+    // Adjusted column widths to fit within 612 - 2*40 = 532pt
+    private static final float[] COL_WIDTHS = {45, 50, 35, 35, 45, 45, 50, 50, 35, 45, 87};
+    private static final String[] HEADERS = {"Symbol", "Latest Price", "EMA", "RSI", "Moving Avg", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status"};
+    private static final int FONT_SIZE = 8;
+    private static final float LEADING = 1.2f * FONT_SIZE;
+    private static final TextMetrics REGULAR = new TextMetrics(PDType1Font.HELVETICA);
+    private static final TextMetrics BOLD = new TextMetrics(PDType1Font.HELVETICA_BOLD);
+
     private PdfExportUtil() {
         // Prevent instantiation
     }
 
-    public static void writeStockDataToPdf(Map<String, StockData> data, ServletOutputStream out) throws IOException {
-        final float margin = 40;
-        final float tableTopY = PDRectangle.LETTER.getHeight() - margin;
-        final float rowHeight = 18;
-        // Adjusted column widths to fit within 612 - 2*40 = 532pt
-        final float[] colWidths = {45, 50, 35, 35, 45, 45, 50, 50, 35, 45, 87};
-        final String[] headers = {"Symbol", "Latest Price", "EMA", "RSI", "Moving Avg", "Volatility", "Bollinger Upper", "Bollinger Lower", "MACD", "MACD Signal", "Status"};
-        final int fontSize = 8;
-
-        try (PDDocument document = new PDDocument()) {
-            PDPage page = new PDPage(PDRectangle.LETTER);
-            document.addPage(page);
-            PDPageContentStream contentStream = new PDPageContentStream(document, page);
-            float y = tableTopY;
-            // Draw header row
-            y = drawTableRow(contentStream, headers, y, colWidths, true, fontSize);
-            // Draw data rows
+    public static void writeStockDataToPdf(Map<String, StockData> data, OutputStream out) throws IOException {
+        try (StreamingWriter writer = openStreaming(MemoryUsageSetting.setupMainMemoryOnly())) {
             for (StockData stock : data.values()) {
-                String[] row = {
-                    stock.getSymbol(),
-                    formatDouble(stock.getLatestPrice()),
-                    formatDouble(stock.getEma()),
-                    formatDouble(stock.getRsi()),
-                    formatDouble(stock.getMovingAverage()),
-                    formatDouble(stock.getVolatility()),
-                    formatDouble(stock.getBollingerUpper()),
-                    formatDouble(stock.getBollingerLower()),
-                    formatDouble(stock.getMacd()),
-                    formatDouble(stock.getMacdSignal()),
-                    stock.getStatusMessage() != null ? stock.getStatusMessage() : ""
-                };
-                float neededHeight = getRowHeightForWrappedText(row, colWidths, contentStream, rowHeight, fontSize);
-                if (y - neededHeight < margin) {
-                    contentStream.close();
-                    page = new PDPage(PDRectangle.LETTER);
-                    document.addPage(page);
-                    contentStream = new PDPageContentStream(document, page);
-                    y = tableTopY;
-                    y = drawTableRow(contentStream, headers, y, colWidths, true, fontSize);
-                }
-                y = drawTableRow(contentStream, row, y, colWidths, false, fontSize);
+                writer.writeSummary(stock);
             }
-            contentStream.close();
-            document.save(out);
+            writer.finish(out);
         }
     }
 
-    private static float drawTableRow(PDPageContentStream contentStream, String[] cells, float y, float[] colWidths, boolean isHeader, int fontSize) throws IOException {
-        float x = 40;
-        float maxHeight = 18;
-        contentStream.setStrokingColor(Color.BLACK);
-        contentStream.setLineWidth(0.5f);
-        contentStream.setFont(isHeader ? PDType1Font.HELVETICA_BOLD : PDType1Font.HELVETICA, fontSize);
-        // Calculate max height for wrapped text
-        for (int i = 0; i < cells.length; i++) {
-            float cellHeight = getWrappedTextHeight(cells[i], colWidths[i], fontSize);
-            if (cellHeight > maxHeight) maxHeight = cellHeight;
+    /**
+     * Opens a report that takes rows one symbol at a time. With a mixed or temp-file
+     * {@link MemoryUsageSetting}, finished page content is kept in a scratch file instead of on
+     * the heap, so long reports need memory only for the page being drawn.
+     */
+    public static StreamingWriter openStreaming(MemoryUsageSetting memoryUsage) throws IOException {
+        return new StreamingWriter(memoryUsage);
+    }
+
+    public static final class StreamingWriter implements Closeable {
+        private final PDDocument document;
+        // Not thread-safe; a writer is used by one request thread
+        private final StringBuilder formatBuffer = new StringBuilder(24);
+        private final char decimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+        private final RowLayout headerLayout = RowLayout.of(HEADERS, BOLD);
+        private PDPageContentStream contentStream;
+        private PDType1Font currentFont;
+        private float y;
+
+        private StreamingWriter(MemoryUsageSetting memoryUsage) throws IOException {
+            this.document = new PDDocument(memoryUsage);
         }
-        // Draw cell rectangles
-        for (int i = 0; i < cells.length; i++) {
-            contentStream.addRect(x, y - maxHeight, colWidths[i], maxHeight);
-            contentStream.stroke();
-            x += colWidths[i];
+
+        public void writeSummary(StockData stock) throws IOException {
+            String[] row = {
+                stock.getSymbol(),
+                formatDouble(stock.getLatestPrice()),
+                formatDouble(stock.getEma()),
+                formatDouble(stock.getRsi()),
+                formatDouble(stock.getMovingAverage()),
+                formatDouble(stock.getVolatility()),
+                formatDouble(stock.getBollingerUpper()),
+                formatDouble(stock.getBollingerLower()),
+                formatDouble(stock.getMacd()),
+                formatDouble(stock.getMacdSignal()),
+                stock.getStatusMessage() != null ? stock.getStatusMessage() : ""
+            };
+            // Wrapped once: the same layout sizes the row and is drawn
+            RowLayout layout = RowLayout.of(row, REGULAR);
+            if (contentStream == null || y - layout.height < MARGIN) {
+                startPage();
+            }
+            y = drawRow(layout, REGULAR);
         }
-        // Draw text
-        x = 40;
-        for (int i = 0; i < cells.length; i++) {
-            drawWrappedText(contentStream, cells[i], x + 2, y - 5, colWidths[i] - 4, fontSize);
-            x += colWidths[i];
+
+        /** Completes the last page and writes the document to {@code out}. */
+        public void finish(OutputStream out) throws IOException {
+            if (contentStream == null) {
+                startPage();
+            }
+            contentStream.close();
+            contentStream = null;
+            document.save(out);
         }
-        return y - maxHeight;
-    }
 
-    private static void drawWrappedText(PDPageContentStream contentStream, String text, float x, float y, float width, int fontSize) throws IOException {
-        PDType1Font font = PDType1Font.HELVETICA;
-        float leading = 1.2f * fontSize;
-        String[] lines = wrapText(text, font, fontSize, width);
-        for (String line : lines) {
+        @Override
+        public void close() throws IOException {
+            if (contentStream != null) {
+                contentStream.close();
+            }
+            document.close(); // Also deletes the scratch file
+        }
+
+        private void startPage() throws IOException {
+            if (contentStream != null) {
+                contentStream.close();
+            }
+            PDPage page = new PDPage(PDRectangle.LETTER);
+            document.addPage(page);
+            contentStream = new PDPageContentStream(document, page);
+            contentStream.setStrokingColor(Color.BLACK);
+            contentStream.setLineWidth(0.5f);
+            currentFont = null;
+            y = TABLE_TOP_Y;
+            y = drawRow(headerLayout, BOLD);
+        }
+
+        private float drawRow(RowLayout layout, TextMetrics metrics) throws IOException {
+            float height = layout.height();
+            // Cell borders go out as one path with a single stroke
+            float x = MARGIN;
+            for (float width : COL_WIDTHS) {
+                contentStream.addRect(x, y - height, width, height);
+                x += width;
+            }
+            contentStream.stroke();
+            // One text object per row; each line is placed relative to the previous one (Td)
             contentStream.beginText();
-            contentStream.setFont(font, fontSize);
-            contentStream.newLineAtOffset(x, y);
-            contentStream.showText(line);
+            if (currentFont != metrics.font) {
+                contentStream.setFont(metrics.font, FONT_SIZE);
+                currentFont = metrics.font;
+            }
+            float lineX = 0;
+            float lineY = 0;
+            x = MARGIN;
+            for (int i = 0; i < COL_WIDTHS.length; i++) {
+                float top = y - 5;
+                String[] lines = layout.lines()[i];
+                for (int j = 0; j < lines.length; j++) {
+                    if (lines[j].isEmpty()) continue;
+                    float targetX = x + 2;
+                    float targetY = top - j * LEADING;
+                    contentStream.newLineAtOffset(targetX - lineX, targetY - lineY);
+                    contentStream.showText(lines[j]);
+                    lineX = targetX;
+                    lineY = targetY;
+                }
+                x += COL_WIDTHS[i];
+            }
             contentStream.endText();
-            y -= leading;
+            return y - height;
+        }
+
+        private String formatDouble(Double d) {
+            if (d == null) return "";
+            double value = d;
+            // Two decimals without Formatter's per-call parsing; huge and non-finite values take the slow path
+            if (!Double.isFinite(value) || Math.abs(value) >= 1e15) return String.format("%.2f", value);
+            long cents = Math.round(Math.abs(value) * 100);
+            formatBuffer.setLength(0);
+            if (value < 0) formatBuffer.append('-');
+            formatBuffer.append(cents / 100).append(decimalSeparator);
+            long fraction = cents % 100;
+            if (fraction < 10) formatBuffer.append('0');
+            return formatBuffer.append(fraction).toString();
         }
     }
 
-    private static String[] wrapText(String text, PDType1Font font, int fontSize, float width) throws IOException {
-        if (text == null) return new String[]{""};
-        String[] words = text.split(" ");
-        StringBuilder line = new StringBuilder();
-        java.util.List<String> lines = new java.util.ArrayList<>();
-        for (String word : words) {
-            String testLine = line.length() == 0 ? word : line + " " + word;
-            float size = font.getStringWidth(testLine) / 1000 * fontSize;
-            if (size > width && line.length() > 0) {
-                lines.add(line.toString());
-                line = new StringBuilder(word);
-            } else {
-                if (line.length() > 0) line.append(" ");
-                line.append(word);
+    /** The wrapped lines of every cell of a row, and the row height they need. */
+    private record RowLayout(String[][] lines, float height) {
+        static RowLayout of(String[] cells, TextMetrics metrics) throws IOException {
+            String[][] lines = new String[cells.length][];
+            float height = MIN_ROW_HEIGHT;
+            for (int i = 0; i < cells.length; i++) {
+                lines[i] = metrics.wrap(cells[i], COL_WIDTHS[i] - 4);
+                height = Math.max(height, lines[i].length * LEADING);
             }
+            return new RowLayout(lines, height);
         }
-        if (line.length() > 0) lines.add(line.toString());
-        return lines.toArray(new String[0]);
     }
 
-    private static float getWrappedTextHeight(String text, float width, int fontSize) throws IOException {
-        PDType1Font font = PDType1Font.HELVETICA;
-        String[] lines = wrapText(text, font, fontSize, width);
-        return lines.length * 1.2f * fontSize;
-    }
+    /**
+     * Glyph widths of a standard font, looked up once per character code instead of measuring
+     * every candidate line. Standard Type 1 fonts are not kerned by PDFBox, so a line's width is
+     * the sum of its glyph widths.
+     */
+    private static final class TextMetrics {
+        private final PDType1Font font;
+        private final float[] widths = new float[256];
 
-    private static float getRowHeightForWrappedText(String[] row, float[] colWidths, PDPageContentStream contentStream, float minHeight, int fontSize) throws IOException {
-        float max = minHeight;
-        for (int i = 0; i < row.length; i++) {
-            float h = getWrappedTextHeight(row[i], colWidths[i], fontSize);
-            if (h > max) max = h;
+        TextMetrics(PDType1Font font) {
+            this.font = font;
+            Arrays.fill(widths, Float.NaN);
+            for (char c = 0; c < widths.length; c++) {
+                try {
+                    widths[c] = font.getStringWidth(String.valueOf(c)) / 1000 * FONT_SIZE;
+                } catch (IOException | IllegalArgumentException e) {
+                    // Not encodable in the font's encoding; measured (and rejected) on use
+                }
+            }
+        }
+
+        float width(String text) throws IOException {
+            float width = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                float glyph = c < widths.length ? widths[c] : Float.NaN;
+                width += Float.isNaN(glyph) ? font.getStringWidth(String.valueOf(c)) / 1000 * FONT_SIZE : glyph;
+            }
+            return width;
         }
-        return max;
-    }
 
-    private static String formatDouble(Double d) {
-        return d != null ? String.format("%.2f", d) : "";
+        /** Greedy word wrap into lines no wider than {@code width}; a single long word overflows. */
+        String[] wrap(String text, float width) throws IOException {
+            if (text == null) return new String[]{""};
+            float space = width(" ");
+            List<String> lines = new ArrayList<>(2);
+            StringBuilder line = new StringBuilder();
+            float lineWidth = 0;
+            for (String word : text.split(" ")) {
+                float wordWidth = width(word);
+                float candidate = line.length() == 0 ? wordWidth : lineWidth + space + wordWidth;
+                if (candidate > width && line.length() > 0) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    line.append(word);
+                    lineWidth = wordWidth;
+                } else {
+                    if (line.length() > 0) line.append(' ');
+                    line.append(word);
+                    lineWidth = candidate;
+                }
+            }
+            if (line.length() > 0) lines.add(line.toString());
+            return lines.toArray(new String[0]);
+        }
     }
 }
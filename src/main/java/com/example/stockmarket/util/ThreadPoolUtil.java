@@ -1,14 +1,95 @@
 package com.example.stockmarket.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Executors for the application. Blocking upstream I/O runs on {@code executorService} and
+ * {@code upstreamExecutorService}, which use one virtual thread per task when
+ * {@code stockmarket.executor.mode=virtual} (Java 21+) and platform pools otherwise.
+ * CPU-bound indicator work always runs on the platform {@code indicatorExecutorService}.
+ */
 @Configuration
 public class ThreadPoolUtil {
+    private static final Logger log = LoggerFactory.getLogger(ThreadPoolUtil.class);
+
+    @Value("${stockmarket.executor.mode:platform}")
+    private String mode;
+
+    @Value("${alphavantage.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    @Value("${stockmarket.jobs.max-running:2}")
+    private int maxRunningJobs;
+
+    /** Runs fetch orchestration: cache lookups, store reads and waiting on upstream calls. */
     @Bean
+    @Primary
     public ExecutorService executorService() {
-        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ExecutorService virtual = virtualThreadExecutor();
+        return virtual != null ? virtual : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), named("fetch-"));
+    }
+
+    /** Runs the HTTP calls released by the market data scheduler. */
+    @Bean
+    public ExecutorService upstreamExecutorService() {
+        ExecutorService virtual = virtualThreadExecutor();
+        return virtual != null ? virtual : Executors.newFixedThreadPool(maxConcurrentRequests, named("market-data-"));
+    }
+
+    @Bean
+    public ExecutorService indicatorExecutorService() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), named("indicator-"));
+    }
+
+    /** Writes price stream events to subscribers; a slow client blocks only its own drain task. */
+    @Bean
+    public ExecutorService streamExecutorService() {
+        ExecutorService virtual = virtualThreadExecutor();
+        return virtual != null ? virtual : Executors.newCachedThreadPool(named("price-stream-"));
+    }
+
+    /** Runs analysis jobs; further jobs wait in the queue, so at most this many run per node. */
+    @Bean
+    public ExecutorService analysisJobExecutorService() {
+        return Executors.newFixedThreadPool(Math.max(1, maxRunningJobs), named("analysis-job-"));
+    }
+
+    /**
+     * Runs the nightly price update, which can take hours, so it never holds one of the
+     * scheduler's threads that the stream heartbeat and job resumption need.
+     */
+    @Bean
+    public ExecutorService priceUpdateExecutorService() {
+        return Executors.newSingleThreadExecutor(named("price-update-"));
+    }
+
+    private ExecutorService virtualThreadExecutor() {
+        if (!"virtual".equalsIgnoreCase(mode)) return null;
+        try {
+            // Looked up reflectively so the application still builds and runs on Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21+, running {} on platform threads", System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
@@ -0,0 +1,62 @@
+package com.example.stockmarket.util;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Weekday-only approximation of the US equity session calendar. Exchange holidays are not
+ * modelled; on those days callers simply find no newer bar upstream.
+ */
+public class TradingCalendar {
+    public static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+    public static final LocalTime MARKET_CLOSE = LocalTime.of(16, 0);
+
+    private TradingCalendar() {
+        // Prevent instantiation
+    }
+
+    /** The most recent session whose daily bar should be published as of now. */
+    public static LocalDate latestCompletedSession() {
+        return latestCompletedSession(Clock.system(MARKET_ZONE));
+    }
+
+    public static LocalDate latestCompletedSession(Clock clock) {
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(MARKET_ZONE));
+        LocalDate day = now.toLocalTime().isBefore(MARKET_CLOSE) ? now.toLocalDate().minusDays(1) : now.toLocalDate();
+        while (isWeekend(day)) {
+            day = day.minusDays(1);
+        }
+        return day;
+    }
+
+    /** The session before {@code day}. */
+    public static LocalDate previousSession(LocalDate day) {
+        LocalDate previous = day.minusDays(1);
+        while (isWeekend(previous)) {
+            previous = previous.minusDays(1);
+        }
+        return previous;
+    }
+
+    /** The next session close after now, when today's daily bar becomes stale. */
+    public static ZonedDateTime nextSessionClose() {
+        return nextSessionClose(Clock.system(MARKET_ZONE));
+    }
+
+    public static ZonedDateTime nextSessionClose(Clock clock) {
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(MARKET_ZONE));
+        LocalDate day = now.toLocalTime().isBefore(MARKET_CLOSE) ? now.toLocalDate() : now.toLocalDate().plusDays(1);
+        while (isWeekend(day)) {
+            day = day.plusDays(1);
+        }
+        return ZonedDateTime.of(day, MARKET_CLOSE, MARKET_ZONE);
+    }
+
+    private static boolean isWeekend(LocalDate day) {
+        return day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY;
+    }
+}
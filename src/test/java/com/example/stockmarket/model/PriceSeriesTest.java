@@ -0,0 +1,121 @@
+package com.example.stockmarket.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceSeriesTest {
+    private static final LocalDate FIRST = LocalDate.of(2024, 6, 3);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void sliceIsBoundsChecked() {
+        PriceSeries series = series(5);
+
+        assertSame(series, series.slice(0, 5));
+        assertTrue(series.slice(2, 2).isEmpty());
+        PriceSeries middle = series.slice(1, 4);
+        assertEquals(3, middle.size());
+        assertEquals(day(1), middle.firstDate());
+        assertEquals(103.0, middle.closeAt(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.slice(-1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.slice(0, 6));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.slice(3, 2));
+        // Indexes are relative to the slice
+        assertThrows(IndexOutOfBoundsException.class, () -> middle.closeAt(3));
+    }
+
+    @Test
+    void betweenIsInclusiveAndMayBeOpenEnded() {
+        PriceSeries series = series(5);
+
+        assertEquals(series.slice(1, 4), series.between(day(1), day(3)));
+        assertEquals(series.slice(0, 3), series.between(null, day(2)));
+        assertEquals(series.slice(2, 5), series.between(day(2), null));
+        assertSame(series, series.between(null, null));
+        // Bounds between or outside the stored dates
+        assertEquals(series.slice(0, 2), series.between(day(-10), day(1)));
+        assertTrue(series.between(day(5), day(9)).isEmpty());
+        assertTrue(series.between(day(3), day(1)).isEmpty());
+    }
+
+    @Test
+    void tailAndIndexOf() {
+        PriceSeries series = PriceSeries.of(new int[]{epochDay(0), epochDay(2), epochDay(4)}, new double[]{1, 2, 3});
+
+        assertEquals(series.slice(1, 3), series.tail(2));
+        assertSame(series, series.tail(10));
+        assertTrue(series.tail(0).isEmpty());
+        assertEquals(1, series.indexOf(day(2)));
+        // Missing dates give -(insertion point) - 1
+        assertEquals(-2, series.indexOf(day(1)));
+        assertEquals(-1, series.indexOf(day(-1)));
+        assertEquals(-4, series.indexOf(day(9)));
+        assertNull(series.closeOn(day(1)));
+        assertEquals(-2, series.slice(1, 3).indexOf(day(3)));
+    }
+
+    @Test
+    void datesMustBeStrictlyAscending() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PriceSeries.of(new int[]{epochDay(1), epochDay(1)}, new double[]{1, 2}));
+        assertThrows(IllegalArgumentException.class,
+                () -> PriceSeries.of(new int[]{epochDay(2), epochDay(1)}, new double[]{1, 2}));
+    }
+
+    @Test
+    void jsonMatchesTheFormerMapForm() throws Exception {
+        PriceSeries series = series(3);
+        Map<LocalDate, Double> map = new TreeMap<>();
+        for (int i = 0; i < 3; i++) {
+            map.put(day(i), 100.0 + i);
+        }
+
+        String json = objectMapper.writeValueAsString(series);
+
+        assertEquals("{\"2024-06-03\":100.0,\"2024-06-04\":101.0,\"2024-06-05\":102.0}", json);
+        assertEquals(series, objectMapper.readValue(json, PriceSeries.class));
+        assertEquals(map, objectMapper.readValue(json, new TypeReference<TreeMap<LocalDate, Double>>() {}));
+        assertEquals(series, PriceSeries.fromMap(map));
+    }
+
+    @Test
+    void repeatedDatesKeepTheLastCloseLikeTheFormerMap() throws Exception {
+        String json = "{\"2024-06-05\": 3.0, \"2024-06-03\": 1.0, \"2024-06-05\": 5.0, \"2024-06-04\": 2.0}";
+        PriceSeries expected = PriceSeries.of(new int[]{epochDay(0), epochDay(1), epochDay(2)}, new double[]{1.0, 2.0, 5.0});
+
+        assertEquals(expected, objectMapper.readValue(json, PriceSeries.class));
+        assertEquals(expected, PriceSeries.sorted(
+                new int[]{epochDay(2), epochDay(0), epochDay(2), epochDay(1)}, new double[]{3.0, 1.0, 5.0, 2.0}, 4));
+    }
+
+    private static PriceSeries series(int size) {
+        int[] days = new int[size];
+        double[] closes = new double[size];
+        for (int i = 0; i < size; i++) {
+            days[i] = epochDay(i);
+            closes[i] = 100.0 + i;
+        }
+        return PriceSeries.of(days, closes);
+    }
+
+    private static int epochDay(int index) {
+        return (int) day(index).toEpochDay();
+    }
+
+    private static LocalDate day(int index) {
+        return FIRST.plusDays(index);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalysisJob;
+import com.example.stockmarket.model.AnalysisJobResult;
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.model.StockData;
+import com.example.stockmarket.repository.AnalysisJobRepository;
+import com.example.stockmarket.repository.AnalysisJobResultRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisJobServiceImplTest {
+    private final AnalysisJobRepository jobRepository = mock(AnalysisJobRepository.class);
+    private final AnalysisJobResultRepository resultRepository = mock(AnalysisJobResultRepository.class);
+    private final DataAggregatorService aggregatorService = mock(DataAggregatorService.class);
+    private final LeaseManager leaseManager = mock(LeaseManager.class);
+    private final ExecutorService jobExecutor = mock(ExecutorService.class);
+    private final List<AnalysisJob> savedJobs = new ArrayList<>();
+    private AnalysisJobServiceImpl service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        service = new AnalysisJobServiceImpl(jobRepository, resultRepository, aggregatorService, leaseManager,
+                objectMapper, jobExecutor, 4, 100, 60_000);
+        // Jobs run inline and unleased
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(jobExecutor).execute(any());
+        when(leaseManager.tryAcquire(any(), any())).thenThrow(new RedisConnectionFailureException("down"));
+        when(jobRepository.save(any())).thenAnswer(invocation -> {
+            AnalysisJob job = invocation.getArgument(0);
+            if (job.getId() == null) job.setId(1L);
+            savedJobs.add(copy(job));
+            when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+            return job;
+        });
+        doAnswer(invocation -> {
+            DataAggregatorService.AnalysisListener listener = invocation.getArgument(2);
+            for (String symbol : invocation.<AnalyticsRequest>getArgument(0).getSymbols()) {
+                listener.onAnalyzed(new StockData(symbol, PriceSeries.empty()), null);
+            }
+            return null;
+        }).when(aggregatorService).streamAggregate(any(), anyInt(), any());
+    }
+
+    @Test
+    void symbolLongerThanTheResultColumnIsRejected() {
+        AnalyticsRequest request = new AnalyticsRequest();
+        request.setSymbols(List.of("AAPL", "X".repeat(AnalysisJobResult.MAX_SYMBOL_LENGTH + 1)));
+
+        assertThrows(IllegalArgumentException.class, () -> service.submit(request));
+        verify(jobRepository, never()).save(any());
+    }
+
+    @Test
+    void resultAlreadyStoredByAnOverlappingAttemptIsIgnored() {
+        when(resultRepository.save(any())).thenThrow(new DataIntegrityViolationException("uk_analysis_job_result_position"));
+        when(resultRepository.existsByJobIdAndPosition(anyLong(), anyInt())).thenReturn(true);
+
+        service.submit(request("AAPL"));
+
+        assertEquals(AnalysisJob.Status.COMPLETED, savedJobs.get(savedJobs.size() - 1).getStatus());
+    }
+
+    @Test
+    void resultThatCannotBeStoredFailsTheJob() {
+        when(resultRepository.save(any())).thenThrow(new DataIntegrityViolationException("value too long"));
+        when(resultRepository.existsByJobIdAndPosition(anyLong(), anyInt())).thenReturn(false);
+
+        service.submit(request("AAPL"));
+
+        AnalysisJob last = savedJobs.get(savedJobs.size() - 1);
+        assertEquals(AnalysisJob.Status.FAILED, last.getStatus());
+        assertEquals("value too long", last.getError());
+    }
+
+    private static AnalyticsRequest request(String... symbols) {
+        AnalyticsRequest request = new AnalyticsRequest();
+        request.setSymbols(List.of(symbols));
+        return request;
+    }
+
+    private static AnalysisJob copy(AnalysisJob job) {
+        AnalysisJob copy = new AnalysisJob();
+        copy.setId(job.getId());
+        copy.setStatus(job.getStatus());
+        copy.setError(job.getError());
+        return copy;
+    }
+}
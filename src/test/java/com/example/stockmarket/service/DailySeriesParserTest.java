@@ -0,0 +1,106 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DailySeriesParserTest {
+
+    @Test
+    void descendingSeriesIsReturnedOldestFirst() throws Exception {
+        DailySeriesParser.Result result = parse(new DailySeriesParser(null), series(
+                bar("2024-06-05", "103.5"), bar("2024-06-04", "102.0"), bar("2024-06-03", "101.0")));
+
+        assertNull(result.error());
+        assertEquals(PriceSeries.of(days("2024-06-03", "2024-06-04", "2024-06-05"), new double[]{101.0, 102.0, 103.5}),
+                result.bars());
+    }
+
+    @Test
+    void ascendingSeriesIsSortedAndFiltered() throws Exception {
+        DailySeriesParser.Result result = parse(new DailySeriesParser(LocalDate.of(2024, 6, 3)), series(
+                bar("2024-06-03", "101.0"), bar("2024-06-04", "102.0"), bar("2024-06-05", "103.5")));
+
+        assertEquals(PriceSeries.of(days("2024-06-04", "2024-06-05"), new double[]{102.0, 103.5}), result.bars());
+    }
+
+    @Test
+    void decodingStopsAtTheFirstBarThatIsNotNewer() throws Exception {
+        // Nothing past the stored day is read, so the broken tail is never reached
+        String json = "{\"Meta Data\": {\"1. Information\": \"Daily Prices\"}, \"Time Series (Daily)\": {"
+                + bar("2024-06-05", "103.5") + ", " + bar("2024-06-04", "102.0") + ", " + bar("2024-06-03", "101.0")
+                + ", \"2024-05-31\": {\"4. close\": ";
+
+        DailySeriesParser.Result result = parse(new DailySeriesParser(LocalDate.of(2024, 6, 3)), json);
+
+        assertEquals(PriceSeries.of(days("2024-06-04", "2024-06-05"), new double[]{102.0, 103.5}), result.bars());
+    }
+
+    @Test
+    void malformedBarsAreSkipped() throws Exception {
+        DailySeriesParser.Result result = parse(new DailySeriesParser(null), series(
+                bar("2024-06-05", "n/a"), bar("2024-13-01", "102.0"), bar("2024-06-03", "101.0")));
+
+        assertEquals(PriceSeries.of(days("2024-06-03"), new double[]{101.0}), result.bars());
+    }
+
+    @Test
+    void errorPayloadsAreReported() throws Exception {
+        DailySeriesParser parser = new DailySeriesParser(null);
+
+        assertEquals("API error: Invalid API call.", parse(parser, "{\"Error Message\": \"Invalid API call.\"}").error());
+        assertEquals("Unexpected API response structure: [foo]", parse(parser, "{\"foo\": 1}").error());
+        assertEquals("No response from Alpha Vantage API", parse(parser, "[]").error());
+    }
+
+    @Test
+    void throttlingNoticeIsRetried() {
+        DailySeriesParser parser = new DailySeriesParser(null);
+
+        assertThrows(MarketDataScheduler.RateLimitedException.class, () -> parse(parser,
+                "{\"Note\": \"Thank you for using Alpha Vantage! Our standard API call frequency is 5 calls per minute.\"}"));
+        assertThrows(MarketDataScheduler.RateLimitedException.class, () -> parse(parser,
+                "{\"Information\": \"Our standard API rate limit is 25 requests per day.\"}"));
+    }
+
+    @Test
+    void otherNoticesFailWithoutRetrying() throws Exception {
+        DailySeriesParser parser = new DailySeriesParser(null);
+
+        DailySeriesParser.Result premium = parse(parser,
+                "{\"Information\": \"Thank you for using Alpha Vantage! This is a premium endpoint.\"}");
+        DailySeriesParser.Result invalidKey = parse(parser,
+                "{\"Information\": \"The **demo** API key is for demo purposes only.\"}");
+
+        assertNull(premium.bars());
+        assertEquals("API error: Thank you for using Alpha Vantage! This is a premium endpoint.", premium.error());
+        assertNull(invalidKey.bars());
+    }
+
+    private static String series(String... bars) {
+        return "{\"Meta Data\": {\"2. Symbol\": \"AAPL\"}, \"Time Series (Daily)\": {" + String.join(", ", bars) + "}}";
+    }
+
+    private static String bar(String date, String close) {
+        return "\"" + date + "\": {\"1. open\": \"100.0\", \"4. close\": \"" + close + "\", \"5. volume\": \"1000\"}";
+    }
+
+    private static int[] days(String... dates) {
+        int[] days = new int[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            days[i] = (int) LocalDate.parse(dates[i]).toEpochDay();
+        }
+        return days;
+    }
+
+    private static DailySeriesParser.Result parse(DailySeriesParser parser, String json) throws Exception {
+        return parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
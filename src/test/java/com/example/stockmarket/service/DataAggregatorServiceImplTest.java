@@ -0,0 +1,147 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.model.StockData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DataAggregatorServiceImplTest {
+    private static final double TOLERANCE = 1e-9;
+    private static final AnalyticsRequest REQUEST = new AnalyticsRequest(List.of("TEST"), 10, 14, 5, 20, null, null);
+
+    private final StockService stockService = mock(StockService.class);
+    private final IndicatorStateStore indicatorStateStore = mock(IndicatorStateStore.class);
+    private final PriceHistoryStore priceHistoryStore = mock(PriceHistoryStore.class);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final DataAggregatorServiceImpl aggregator =
+            new DataAggregatorServiceImpl(stockService, new IndicatorEngine(), indicatorStateStore, priceHistoryStore,
+                    executor, executor);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void dateRangeBacktestTradesOnlyWithinTheRange() {
+        PriceSeries prices = randomWalk(300);
+        LocalDate start = prices.dateAt(100);
+        LocalDate end = prices.dateAt(250);
+        AnalyticsRequest request = new AnalyticsRequest(List.of("TEST"), 10, 14, 5, 20, start, end);
+        int warmUp = IndicatorEngine.warmUpBars(request);
+        PriceSeries loaded = prices.slice(100 - warmUp, 251);
+        when(stockService.fetchStockData(eq("TEST"), eq(start), eq(end), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(new StockData("TEST", loaded)));
+
+        StockData result = aggregator.fetchAndAggregateWithDateRange(List.of("TEST"), 10, 14, 5, 20, start, end).get("TEST");
+
+        StockData inRange = new StockData("TEST", prices.between(start, end));
+        StockServiceImpl baseline = new StockServiceImpl(null, null, null, null, null, new SimpleMeterRegistry());
+        assertEquals(151, result.getClosingPrices().size());
+        assertEquals(baseline.simulateSimpleMovingAverageStrategy(inRange, 5, 20), finalValue(result), TOLERANCE);
+    }
+
+    @Test
+    void missingStateIsSeededFromTheFirstStoredBar() {
+        PriceSeries prices = randomWalk(300);
+        when(stockService.fetchStockData("TEST"))
+                .thenReturn(CompletableFuture.completedFuture(new StockData("TEST", prices.tail(30))));
+        when(priceHistoryStore.load("TEST", null, null)).thenReturn(prices);
+
+        StockData result = aggregator.fetchAndAggregate(List.of("TEST"), 10, 14, 5, 20).get("TEST");
+
+        assertSameIndicators(fullReplay(prices), result);
+        assertEquals(30, result.getClosingPrices().size());
+        verify(indicatorStateStore).save(argThat(state -> state.getFirstEpochDay() == prices.epochDayAt(0)
+                && state.getLastEpochDay() == prices.epochDayAt(299)));
+    }
+
+    @Test
+    void storedStateIsMovedOnByTheWindowAlone() {
+        PriceSeries prices = randomWalk(300);
+        IndicatorState stored = new IndicatorState("TEST", REQUEST);
+        IndicatorEngine.foldNewer(stored, prices.slice(0, 290));
+        when(indicatorStateStore.find(eq("TEST"), any())).thenReturn(stored);
+        when(stockService.fetchStockData("TEST"))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new StockData("TEST", prices.tail(30))));
+
+        StockData first = aggregator.fetchAndAggregate(List.of("TEST"), 10, 14, 5, 20).get("TEST");
+        StockData second = aggregator.fetchAndAggregate(List.of("TEST"), 10, 14, 5, 20).get("TEST");
+
+        assertSameIndicators(fullReplay(prices), first);
+        assertSameIndicators(fullReplay(prices), second);
+        verifyNoInteractions(priceHistoryStore);
+        // Saved once when it moved forward; the second request finds it already up to date
+        verify(indicatorStateStore, times(1)).save(stored);
+    }
+
+    @Test
+    void stateBehindTheWindowIsCaughtUpFromTheStore() {
+        PriceSeries prices = randomWalk(300);
+        IndicatorState stored = new IndicatorState("TEST", REQUEST);
+        IndicatorEngine.foldNewer(stored, prices.slice(0, 200));
+        when(indicatorStateStore.find(eq("TEST"), any())).thenReturn(stored);
+        when(stockService.fetchStockData("TEST"))
+                .thenReturn(CompletableFuture.completedFuture(new StockData("TEST", prices.tail(30))));
+        when(priceHistoryStore.load("TEST", prices.dateAt(200), null)).thenReturn(prices.slice(200, 300));
+
+        StockData result = aggregator.fetchAndAggregate(List.of("TEST"), 10, 14, 5, 20).get("TEST");
+
+        assertSameIndicators(fullReplay(prices), result);
+        verify(indicatorStateStore).save(stored);
+    }
+
+    private static StockData fullReplay(PriceSeries prices) {
+        StockData replayed = new StockData("TEST", prices);
+        new IndicatorEngine().apply(replayed, REQUEST);
+        return replayed;
+    }
+
+    private static void assertSameIndicators(StockData expected, StockData actual) {
+        assertEquals(expected.getMovingAverage(), actual.getMovingAverage(), TOLERANCE);
+        assertEquals(expected.getEma(), actual.getEma(), TOLERANCE);
+        assertEquals(expected.getRsi(), actual.getRsi(), TOLERANCE);
+        assertEquals(expected.getMacd(), actual.getMacd(), TOLERANCE);
+        assertEquals(expected.getMacdSignal(), actual.getMacdSignal(), TOLERANCE);
+        assertEquals(finalValue(expected), finalValue(actual), TOLERANCE);
+    }
+
+    static double finalValue(StockData data) {
+        String prefix = "Simulated final portfolio value: ";
+        assertEquals(0, data.getStatusMessage().indexOf(prefix), data.getStatusMessage());
+        return Double.parseDouble(data.getStatusMessage().substring(prefix.length()));
+    }
+
+    static PriceSeries randomWalk(int size) {
+        Random random = new Random(7);
+        int[] days = new int[size];
+        double[] closes = new double[size];
+        double price = 100;
+        for (int i = 0; i < size; i++) {
+            price = Math.max(1, price + random.nextGaussian() * 2);
+            days[i] = 19_000 + i;
+            closes[i] = price;
+        }
+        return PriceSeries.of(days, closes);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.model.StockData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndicatorEngineTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void rollingKernelsMatchNaiveWindows() {
+        PriceSeries prices = randomWalk(2_000);
+        StockServiceImpl stockService = new StockServiceImpl(null, null, null, null, null, new SimpleMeterRegistry());
+        StockData data = new StockData("TEST", prices);
+
+        List<Double> upper = stockService.calculateBollingerUpper(data, 20, 2.0);
+        List<Double> movingAverage = stockService.calculateMovingAverage(data, 20);
+        assertEquals(prices.size() - 19, upper.size());
+        for (int i = 0; i < upper.size(); i++) {
+            double mean = 0;
+            for (int j = i; j < i + 20; j++) mean += prices.closeAt(j);
+            mean /= 20;
+            double squares = 0;
+            for (int j = i; j < i + 20; j++) squares += Math.pow(prices.closeAt(j) - mean, 2);
+            assertEquals(mean, movingAverage.get(i), TOLERANCE);
+            assertEquals(mean + 2.0 * Math.sqrt(squares / 20), upper.get(i), TOLERANCE);
+        }
+    }
+
+    @Test
+    void fusedPassMatchesIndividualIndicators() {
+        PriceSeries prices = randomWalk(500);
+        StockServiceImpl stockService = new StockServiceImpl(null, null, null, null, null, new SimpleMeterRegistry());
+        StockData expected = new StockData("TEST", prices);
+        StockData actual = new StockData("TEST", prices);
+
+        new IndicatorEngine().apply(actual, new AnalyticsRequest(List.of("TEST"), 10, 14, 5, 20, null, null));
+
+        List<Double> macd = stockService.calculateMACD(expected, 12, 26);
+        List<Double> signal = stockService.calculateMACDSignal(macd, 9);
+        List<Double> lower = stockService.calculateBollingerLower(expected, 10, 2.0);
+        assertEquals(stockService.calculateVolatility(expected, 14), actual.getVolatility(), TOLERANCE);
+        assertEquals(stockService.calculateEMA(expected, 10), actual.getEma(), TOLERANCE);
+        assertEquals(stockService.calculateRSI(expected, 10), actual.getRsi(), TOLERANCE);
+        assertEquals(lower.get(lower.size() - 1), actual.getBollingerLower(), TOLERANCE);
+        assertEquals(macd.get(macd.size() - 1), actual.getMacd(), TOLERANCE);
+        assertEquals(signal.get(signal.size() - 1), actual.getMacdSignal(), TOLERANCE);
+        assertEquals(stockService.simulateSimpleMovingAverageStrategy(expected, 5, 20),
+                DataAggregatorServiceImplTest.finalValue(actual), TOLERANCE);
+    }
+
+    @Test
+    void nonPositivePeriodIsRejected() {
+        StockServiceImpl stockService = new StockServiceImpl(null, null, null, null, null, new SimpleMeterRegistry());
+        StockData data = new StockData("TEST", randomWalk(50));
+
+        assertThrows(IllegalArgumentException.class, () -> new RollingStats(0));
+        assertThrows(IllegalArgumentException.class, () -> new RollingStats(-5));
+        // Used to return NaN averages for a zero period
+        assertThrows(IllegalArgumentException.class, () -> stockService.calculateMovingAverage(data, 0));
+        assertThrows(IllegalArgumentException.class, () -> stockService.calculateBollingerUpper(data, 0, 2.0));
+    }
+
+    @Test
+    void perBarReplayMatchesMovingAverageSeries() throws Exception {
+        PriceSeries prices = randomWalk(300);
+        StockServiceImpl stockService = new StockServiceImpl(null, null, null, null, null, new SimpleMeterRegistry());
+        AnalyticsRequest request = new AnalyticsRequest(List.of("TEST"), 10, 14, 5, 20, null, null);
+        List<Double> movingAverage = stockService.calculateMovingAverage(new StockData("TEST", prices), 10);
+        List<StockData> rows = new ArrayList<>();
+
+        IndicatorEngine.forEachBar("TEST", prices, request, prices.dateAt(100), (date, close, values) -> rows.add(values));
+
+        assertEquals(200, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(prices.closeAt(100 + i), rows.get(i).getLatestPrice(), TOLERANCE);
+            assertEquals(movingAverage.get(100 + i - 9), rows.get(i).getMovingAverage(), TOLERANCE);
+        }
+        StockData latest = new StockData("TEST", prices);
+        new IndicatorEngine().apply(latest, request);
+        assertEquals(latest.getMacdSignal(), rows.get(rows.size() - 1).getMacdSignal(), TOLERANCE);
+    }
+
+    @Test
+    void foldingNewerBarsMatchesFullReplay() {
+        PriceSeries prices = randomWalk(300);
+        AnalyticsRequest request = new AnalyticsRequest(List.of("TEST"), 10, 14, 5, 20, null, null);
+        IndicatorState state = new IndicatorState("TEST", request);
+        assertEquals(200, IndicatorEngine.foldNewer(state, prices.slice(0, 200)));
+
+        // A later window overlapping the state only contributes its newer bars
+        assertEquals(100, IndicatorEngine.foldNewer(state, prices.slice(170, 300)));
+        assertEquals(0, IndicatorEngine.foldNewer(state, prices.tail(30)));
+        StockData resumed = new StockData("TEST", prices);
+        state.writeTo(resumed);
+        StockData replayed = new StockData("TEST", prices);
+        new IndicatorEngine().apply(replayed, request);
+
+        assertEquals(prices.epochDayAt(0), state.getFirstEpochDay());
+        assertSameIndicators(replayed, resumed);
+    }
+
+    @Test
+    void stateReachesOnlyWindowsThatLeaveNoGap() {
+        PriceSeries prices = randomWalk(300);
+        AnalyticsRequest request = new AnalyticsRequest(List.of("TEST"), 10, 14, 5, 20, null, null);
+        IndicatorState state = new IndicatorState("TEST", request);
+        assertFalse(IndicatorEngine.reaches(state, prices.tail(30)));
+        IndicatorEngine.foldNewer(state, prices.slice(0, 280));
+
+        assertTrue(IndicatorEngine.reaches(state, prices.tail(30)));
+        assertTrue(IndicatorEngine.reaches(state, prices.slice(250, 280)));
+        assertFalse(IndicatorEngine.reaches(state, prices.slice(280, 300)));
+    }
+
+    private static void assertSameIndicators(StockData expected, StockData actual) {
+        assertEquals(expected.getMovingAverage(), actual.getMovingAverage(), TOLERANCE);
+        assertEquals(expected.getVolatility(), actual.getVolatility(), TOLERANCE);
+        assertEquals(expected.getEma(), actual.getEma(), TOLERANCE);
+        assertEquals(expected.getRsi(), actual.getRsi(), TOLERANCE);
+        assertEquals(expected.getBollingerUpper(), actual.getBollingerUpper(), TOLERANCE);
+        assertEquals(expected.getBollingerLower(), actual.getBollingerLower(), TOLERANCE);
+        assertEquals(expected.getMacd(), actual.getMacd(), TOLERANCE);
+        assertEquals(expected.getMacdSignal(), actual.getMacdSignal(), TOLERANCE);
+        assertEquals(expected.getStatusMessage(), actual.getStatusMessage());
+    }
+
+    private static PriceSeries randomWalk(int size) {
+        Random random = new Random(42);
+        int[] days = new int[size];
+        double[] closes = new double[size];
+        double price = 100;
+        for (int i = 0; i < size; i++) {
+            price = Math.max(1, price + random.nextGaussian());
+            days[i] = 19_000 + i;
+            closes[i] = price;
+        }
+        return PriceSeries.of(days, closes);
+    }
+}
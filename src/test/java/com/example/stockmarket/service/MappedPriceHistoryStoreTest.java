@@ -0,0 +1,91 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedPriceHistoryStoreTest {
+    private static final int FIRST_DAY = (int) LocalDate.of(2024, 1, 1).toEpochDay();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedBarsAreLoadedBack() throws Exception {
+        MappedPriceHistoryStore store = new MappedPriceHistoryStore(directory.toString());
+        assertNull(store.latestDate("AAPL"));
+
+        store.append("aapl", bars(0, 10));
+        // Overlapping bars are ignored, only the newer ones are stored
+        store.append("AAPL", bars(5, 15));
+
+        PriceSeries stored = store.load("AAPL", null, null);
+        assertEquals(bars(0, 15), stored);
+        assertEquals(day(14), store.latestDate("AAPL"));
+        assertEquals(bars(3, 8), store.load("AAPL", day(3), day(7)));
+        assertEquals(bars(10, 15), store.loadLatest("AAPL", 5));
+    }
+
+    @Test
+    void rangeIsPrecededByWarmUpBars() throws Exception {
+        MappedPriceHistoryStore store = new MappedPriceHistoryStore(directory.toString());
+        store.append("AAPL", bars(0, 50));
+
+        assertEquals(bars(15, 41), store.load("AAPL", day(20), day(40), 5));
+        assertEquals(bars(0, 11), store.load("AAPL", day(2), day(10), 5));
+        // Open-ended ranges start from the first stored bar
+        assertEquals(bars(0, 11), store.load("AAPL", null, day(10), 5));
+        assertEquals(bars(0, 50), store.load("AAPL", null, null, 5));
+    }
+
+    @Test
+    void growKeepsBarsAndOtherInstancesRemap() throws Exception {
+        MappedPriceHistoryStore writer = new MappedPriceHistoryStore(directory.toString());
+        MappedPriceHistoryStore reader = new MappedPriceHistoryStore(directory.toString());
+        writer.append("AAPL", bars(0, 100));
+        assertEquals(day(99), reader.latestDate("AAPL"));
+
+        // Past the initial capacity, so the file is rewritten and replaced
+        writer.append("AAPL", bars(100, 1_500));
+
+        assertEquals(day(1_499), reader.latestDate("AAPL"));
+        assertEquals(bars(0, 1_500), reader.load("AAPL", null, null));
+        // The reader appends to the grown file, not the superseded one
+        reader.append("AAPL", bars(1_500, 1_510));
+        assertEquals(bars(0, 1_510), writer.load("AAPL", null, null));
+        assertTrue(Files.exists(directory.resolve("AAPL.bars.lock")));
+    }
+
+    @Test
+    void truncatedFileIsTreatedAsEmpty() throws Exception {
+        Files.write(directory.resolve("AAPL.bars"), new byte[10]);
+        MappedPriceHistoryStore store = new MappedPriceHistoryStore(directory.toString());
+        assertNull(store.latestDate("AAPL"));
+
+        store.append("AAPL", bars(0, 3));
+
+        assertEquals(bars(0, 3), store.load("AAPL", null, null));
+    }
+
+    private static PriceSeries bars(int from, int to) {
+        int[] days = new int[to - from];
+        double[] closes = new double[to - from];
+        for (int i = from; i < to; i++) {
+            days[i - from] = FIRST_DAY + i;
+            closes[i - from] = 100 + i * 0.5;
+        }
+        return PriceSeries.of(days, closes);
+    }
+
+    private static LocalDate day(int index) {
+        return LocalDate.ofEpochDay(FIRST_DAY + index);
+    }
+}
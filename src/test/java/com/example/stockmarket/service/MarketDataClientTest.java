@@ -0,0 +1,84 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.config.AlphaVantageConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MarketDataClientTest {
+    private final ExecutorService parseExecutor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdown() {
+        parseExecutor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void stalledBodyTimesOutAndIsClosed() throws Exception {
+        AlphaVantageConfig config = new AlphaVantageConfig();
+        ReflectionTestUtils.setField(config, "apiKey", "key");
+        ReflectionTestUtils.setField(config, "baseUrl", "http://localhost/query");
+        ReflectionTestUtils.setField(config, "readTimeoutMillis", 50L);
+        StalledBody body = new StalledBody();
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body);
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        MarketDataScheduler scheduler = mock(MarketDataScheduler.class);
+        when(scheduler.submit(any(), any())).thenAnswer(invocation -> invocation.<Supplier<CompletableFuture<?>>>getArgument(1).get());
+        MarketDataClient client = new MarketDataClient(config, httpClient, scheduler, parseExecutor, new ObjectMapper());
+
+        CompletableFuture<Map<String, Object>> result = client.queryJson(MarketDataScheduler.Priority.BATCH,
+                "GLOBAL_QUOTE", Map.of("symbol", "AAPL"));
+
+        CompletionException error = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        // The parse thread blocked on the body is released
+        assertTrue(body.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    /** A body whose first byte never arrives. */
+    private static final class StalledBody extends InputStream {
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AddStockRequest;
+import com.example.stockmarket.model.BulkImportResultDTO;
+import com.example.stockmarket.model.Portfolio;
+import com.example.stockmarket.model.PortfolioPageDTO;
+import com.example.stockmarket.model.PortfolioStock;
+import com.example.stockmarket.model.PortfolioSummaryDTO;
+import com.example.stockmarket.repository.PortfolioRepository;
+import com.example.stockmarket.repository.PortfolioStockRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PortfolioServiceImplTest {
+    private final PortfolioRepository portfolioRepository = mock(PortfolioRepository.class);
+    private final PortfolioStockRepository portfolioStockRepository = mock(PortfolioStockRepository.class);
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Double> redisTemplate = mock(RedisTemplate.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final MarketDataClient marketDataClient = mock(MarketDataClient.class);
+    private final PortfolioServiceImpl service = new PortfolioServiceImpl(portfolioRepository, portfolioStockRepository,
+            marketDataClient, mock(PortfolioValuationCache.class), redisTemplate, jdbcTemplate, transactionTemplate, 2);
+
+    @Test
+    void fullPageCarriesTheCursorOfItsLastPortfolio() {
+        // Asked for two, the repository returns the extra third row
+        when(portfolioRepository.findSummariesAfter(eq(10L), any(Pageable.class)))
+                .thenReturn(summaries(11L, 12L, 13L));
+
+        PortfolioPageDTO page = service.listPortfolios(null, 10L, 2, false);
+
+        assertEquals(List.of(11L, 12L), ids(page));
+        assertEquals(12L, page.getNextCursor());
+        assertNull(page.getPortfolios().get(0).getStocks());
+        verify(portfolioStockRepository, never()).findPositionsByPortfolioIds(anyCollection());
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        when(portfolioRepository.findSummariesByOwnerAfter(eq("alice"), eq(0L), any(Pageable.class)))
+                .thenReturn(summaries(3L, 7L));
+
+        PortfolioPageDTO page = service.listPortfolios("alice", null, 2, false);
+
+        assertEquals(List.of(3L, 7L), ids(page));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void stocksAreGroupedUnderTheirPortfolios() {
+        when(portfolioRepository.findSummariesAfter(eq(0L), any(Pageable.class))).thenReturn(summaries(1L, 2L, 3L));
+        when(portfolioStockRepository.findPositionsByPortfolioIds(Set.of(1L, 2L))).thenReturn(List.of(
+                new Object[]{1L, 100L, "AAPL", 10, 150.0, 190.0},
+                new Object[]{1L, 101L, "MSFT", 5, 300.0, null},
+                new Object[]{2L, 102L, "NVDA", 2, 90.0, 120.0}));
+
+        PortfolioPageDTO page = service.listPortfolios("", null, 2, true);
+
+        List<PortfolioSummaryDTO> portfolios = page.getPortfolios();
+        assertEquals(List.of("AAPL", "MSFT"), symbols(portfolios.get(0)));
+        assertEquals(List.of("NVDA"), symbols(portfolios.get(1)));
+        PortfolioSummaryDTO.Position position = portfolios.get(0).getStocks().get(0);
+        assertEquals(100L, position.getId());
+        assertEquals(10, position.getQuantity());
+        assertEquals(150.0, position.getBuyPrice());
+        assertEquals(190.0, position.getCurrentPrice());
+        assertEquals(2L, page.getNextCursor());
+    }
+
+    @Test
+    void importIntoUnknownPortfolioIsRejected() {
+        when(portfolioRepository.existsById(9L)).thenReturn(false);
+
+        assertThrows(IllegalArgumentException.class, () -> service.importPositions(9L, List.of(position("AAPL", 1, 1.0))));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void validPositionsAreBatchInsertedAndUnpricedSymbolsFilledInLater() throws Exception {
+        when(portfolioRepository.existsById(1L)).thenReturn(true);
+        ValueOperations<String, Double> prices = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(prices);
+        when(prices.multiGet(List.of("AAPL", "MSFT"))).thenReturn(Arrays.asList(190.0, null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(marketDataClient.queryJson(MarketDataScheduler.Priority.BATCH, "GLOBAL_QUOTE", Map.of("symbol", "MSFT")))
+                .thenReturn(CompletableFuture.completedFuture(Map.of("Global Quote", Map.of("05. price", "410.5"))));
+
+        BulkImportResultDTO result = service.importPositions(1L, Arrays.asList(
+                position(" AAPL ", 10, 150.0),
+                position("", 1, 1.0),
+                null,
+                position("MSFT", -1, 300.0),
+                position("MSFT", 5, 300.0)));
+
+        assertEquals(2, result.getImported());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of("Position 2: symbol is required", "Position 3: symbol is required",
+                "Position 4: quantity must not be negative"), result.getErrors());
+        assertEquals(1, result.getSymbolsPricePending());
+
+        ArgumentCaptor<Collection<AddStockRequest>> inserted = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<AddStockRequest>> setter =
+                ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), inserted.capture(), eq(2), setter.capture());
+        List<AddStockRequest> rows = new ArrayList<>(inserted.getValue());
+        assertEquals(List.of("AAPL", "MSFT"), rows.stream().map(AddStockRequest::getSymbol).toList());
+        // Cached prices go in with the insert, the rest start out empty
+        PreparedStatement statement = mock(PreparedStatement.class);
+        setter.getValue().setValues(statement, rows.get(0));
+        verify(statement).setObject(5, 190.0, Types.DOUBLE);
+        statement = mock(PreparedStatement.class);
+        setter.getValue().setValues(statement, rows.get(1));
+        verify(statement).setObject(5, null, Types.DOUBLE);
+
+        verify(jdbcTemplate).update(anyString(), eq(410.5), eq(1L), eq("MSFT"));
+        verify(prices).set(eq("MSFT"), eq(410.5), any(Duration.class));
+        verify(marketDataClient, never()).queryJson(any(), anyString(), eq(Map.of("symbol", "AAPL")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void uncachedPositionIsSavedUnpricedAndPricedLater() {
+        Portfolio portfolio = new Portfolio();
+        portfolio.setId(1L);
+        when(portfolioRepository.findById(1L)).thenReturn(Optional.of(portfolio));
+        ValueOperations<String, Double> prices = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(prices);
+        when(prices.multiGet(List.of("MSFT"))).thenReturn(Arrays.asList((Double) null));
+        when(portfolioStockRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        CompletableFuture<Map<String, Object>> quote = new CompletableFuture<>();
+        when(marketDataClient.queryJson(MarketDataScheduler.Priority.INTERACTIVE, "GLOBAL_QUOTE", Map.of("symbol", "MSFT")))
+                .thenReturn(quote);
+
+        // Returns while the quote is still outstanding
+        PortfolioStock saved = service.addStockToPortfolio(1L, "MSFT", 5, 300.0);
+
+        assertNull(saved.getCurrentPrice());
+        verify(jdbcTemplate, never()).update(anyString(), any(), any(), any());
+        quote.complete(Map.of("Global Quote", Map.of("05. price", "410.5")));
+        verify(jdbcTemplate).update(anyString(), eq(410.5), eq(1L), eq("MSFT"));
+    }
+
+    private static AddStockRequest position(String symbol, Integer quantity, Double buyPrice) {
+        AddStockRequest position = new AddStockRequest();
+        position.setSymbol(symbol);
+        position.setQuantity(quantity);
+        position.setBuyPrice(buyPrice);
+        return position;
+    }
+
+    private static List<PortfolioSummaryDTO> summaries(Long... ids) {
+        List<PortfolioSummaryDTO> summaries = new ArrayList<>();
+        for (Long id : ids) {
+            summaries.add(new PortfolioSummaryDTO(id, "Portfolio " + id, "alice", null));
+        }
+        return summaries;
+    }
+
+    private static List<Long> ids(PortfolioPageDTO page) {
+        return page.getPortfolios().stream().map(PortfolioSummaryDTO::getId).toList();
+    }
+
+    private static List<String> symbols(PortfolioSummaryDTO portfolio) {
+        return portfolio.getStocks().stream().map(PortfolioSummaryDTO.Position::getSymbol).toList();
+    }
+}
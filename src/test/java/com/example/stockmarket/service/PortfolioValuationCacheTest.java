@@ -0,0 +1,123 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.Portfolio;
+import com.example.stockmarket.model.PortfolioAnalyticsDTO;
+import com.example.stockmarket.model.PortfolioStock;
+import com.example.stockmarket.repository.PortfolioRepository;
+import com.example.stockmarket.repository.PortfolioStockRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PortfolioValuationCacheTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private final PortfolioRepository portfolioRepository = mock(PortfolioRepository.class);
+    private final PortfolioStockRepository portfolioStockRepository = mock(PortfolioStockRepository.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final Portfolio portfolio = new Portfolio();
+    private final List<PortfolioStock> stored = new ArrayList<>();
+
+    PortfolioValuationCacheTest() {
+        portfolio.setId(1L);
+        portfolio.setName("Growth");
+        portfolio.setOwner("alice");
+        stored.add(position(10L, "AAPL", 10, 100.0, 110.0));
+        stored.add(position(11L, "MSFT", 5, 200.0, 220.0));
+        when(portfolioRepository.findById(1L)).thenReturn(Optional.of(portfolio));
+        when(portfolioStockRepository.findByPortfolioId(1L)).thenAnswer(invocation -> List.copyOf(stored));
+    }
+
+    @Test
+    void eventsRelayedThroughRedisUpdateTheValuation() {
+        PortfolioValuationCache cache = cache(60_000);
+        assertTotals(cache, 2200, 2000);
+
+        // Added position
+        PortfolioStock added = position(12L, "AAPL", 2, 90.0, 120.0);
+        stored.add(added);
+        cache.positionSaved(added);
+        assertTotals(cache, 2440, 2180);
+
+        // Price update reaches every position of the symbol
+        cache.pricesUpdated(Map.of("AAPL", 130.0));
+        assertTotals(cache, 2660, 2180);
+
+        // Removed position
+        stored.remove(1);
+        cache.positionRemoved(11L);
+        assertTotals(cache, 1560, 1180);
+
+        // Served from memory throughout
+        verify(portfolioStockRepository, times(1)).findByPortfolioId(1L);
+    }
+
+    @Test
+    void valuationIsReloadedOnceItExceedsItsMaxAge() throws Exception {
+        PortfolioValuationCache cache = cache(1);
+        assertTotals(cache, 2200, 2000);
+
+        // A change whose event never arrived, e.g. published while Redis was unreachable elsewhere
+        stored.get(0).setCurrentPrice(150.0);
+        Thread.sleep(5);
+
+        assertTotals(cache, 2600, 2000);
+        verify(portfolioStockRepository, times(2)).findByPortfolioId(1L);
+    }
+
+    private PortfolioValuationCache cache(long maxAgeMillis) {
+        RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+        PortfolioValuationCache cache = new PortfolioValuationCache(portfolioRepository, portfolioStockRepository,
+                redisTemplate, new ObjectMapper(), container, new SimpleMeterRegistry(), maxAgeMillis);
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(container).addMessageListener(listener.capture(), any(Topic.class));
+        // Loop published events straight back, as Redis would
+        doAnswer(invocation -> {
+            String channel = invocation.getArgument(0);
+            String payload = invocation.getArgument(1);
+            listener.getValue().onMessage(new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8),
+                    payload.getBytes(StandardCharsets.UTF_8)), null);
+            return 1L;
+        }).when(redisTemplate).convertAndSend(anyString(), anyString());
+        return cache;
+    }
+
+    private static void assertTotals(PortfolioValuationCache cache, double value, double cost) {
+        PortfolioAnalyticsDTO analytics = cache.get(1L).orElseThrow();
+        assertEquals(value, analytics.getTotalValue(), TOLERANCE);
+        assertEquals(cost, analytics.getTotalCost(), TOLERANCE);
+        assertEquals(value - cost, analytics.getPnl(), TOLERANCE);
+    }
+
+    private PortfolioStock position(Long id, String symbol, int quantity, double buyPrice, double currentPrice) {
+        PortfolioStock stock = new PortfolioStock();
+        stock.setId(id);
+        stock.setPortfolio(portfolio);
+        stock.setSymbol(symbol);
+        stock.setQuantity(quantity);
+        stock.setBuyPrice(buyPrice);
+        stock.setCurrentPrice(currentPrice);
+        return stock;
+    }
+}
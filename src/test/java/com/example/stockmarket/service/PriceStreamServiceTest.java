@@ -0,0 +1,131 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceUpdate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class PriceStreamServiceTest {
+    private static final String HEARTBEAT = "heartbeat";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final ExecutorService streamExecutor = mock(ExecutorService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private MessageListener listener;
+
+    PriceStreamServiceTest() {
+        // Drain tasks run only when the test says so
+        doAnswer(invocation -> tasks.add(invocation.getArgument(0))).when(streamExecutor).execute(any());
+    }
+
+    @Test
+    void updatesFanOutToMatchingSubscribers() throws Exception {
+        PriceStreamService service = service(8);
+        SseEmitter all = mock(SseEmitter.class);
+        SseEmitter apple = mock(SseEmitter.class);
+        service.subscribe(Set.of(), all);
+        service.subscribe(Set.of("AAPL"), apple);
+
+        receive("AAPL", 190.0);
+        receive("MSFT", 410.0);
+        runTasks();
+
+        assertEquals(List.of("AAPL", "MSFT"), sent(all));
+        assertEquals(List.of("AAPL"), sent(apple));
+    }
+
+    @Test
+    void slowSubscriberLosesItsOldestUpdates() throws Exception {
+        PriceStreamService service = service(2);
+        SseEmitter emitter = mock(SseEmitter.class);
+        service.subscribe(Set.of(), emitter);
+
+        receive("AAPL", 190.0);
+        receive("MSFT", 410.0);
+        receive("NVDA", 120.0);
+        runTasks();
+
+        assertEquals(List.of("MSFT", "NVDA"), sent(emitter));
+        assertEquals(1, meterRegistry.counter("price.stream.dropped").count());
+    }
+
+    @Test
+    void heartbeatIsSkippedWhileUpdatesArePending() throws Exception {
+        PriceStreamService service = service(1);
+        SseEmitter emitter = mock(SseEmitter.class);
+        service.subscribe(Set.of(), emitter);
+
+        receive("AAPL", 190.0);
+        service.heartbeat();
+        runTasks();
+        // Idle again, so the next one goes out
+        service.heartbeat();
+        runTasks();
+
+        assertEquals(List.of("AAPL", HEARTBEAT), sent(emitter));
+        assertEquals(0, meterRegistry.counter("price.stream.dropped").count());
+    }
+
+    private PriceStreamService service(int bufferSize) {
+        RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+        PriceStreamService service = new PriceStreamService(mock(StringRedisTemplate.class), objectMapper,
+                streamExecutor, container, meterRegistry, bufferSize, 60_000);
+        ArgumentCaptor<MessageListener> captor = ArgumentCaptor.forClass(MessageListener.class);
+        verify(container).addMessageListener(captor.capture(), any(Topic.class));
+        listener = captor.getValue();
+        return service;
+    }
+
+    private void receive(String symbol, double price) throws Exception {
+        String payload = objectMapper.writeValueAsString(
+                new PriceUpdate(symbol, LocalDate.of(2024, 6, 3), price, null, Map.of()));
+        listener.onMessage(new DefaultMessage(PriceStreamService.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                payload.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    /** The symbol of every event sent, or {@code "heartbeat"} for a heartbeat comment. */
+    private List<String> sent(SseEmitter emitter) throws Exception {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, atLeast(0)).send(events.capture());
+        List<String> symbols = new ArrayList<>();
+        for (SseEmitter.SseEventBuilder event : events.getAllValues()) {
+            String text = event.build().stream()
+                    .map(part -> part.getData() instanceof String data ? data : null)
+                    .filter(data -> data != null && data.startsWith("{"))
+                    .collect(Collectors.joining());
+            symbols.add(text.isEmpty() ? HEARTBEAT : objectMapper.readValue(text, PriceUpdate.class).getSymbol());
+        }
+        return symbols;
+    }
+}
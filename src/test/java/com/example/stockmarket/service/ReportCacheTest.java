@@ -0,0 +1,58 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.AnalyticsRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReportCacheTest {
+    private static final LocalDate FRIDAY = LocalDate.of(2026, 10, 9);
+    private static final LocalDate MONDAY = LocalDate.of(2026, 10, 12);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void newSessionChangesKeyOfOpenEndedReport() throws Exception {
+        ReportCache cache = cache(Map.of("AAPL", FRIDAY));
+        AnalyticsRequest request = new AnalyticsRequest(List.of("AAPL"), 5, 5, 5, 20, null, null);
+
+        assertEquals(cache.key("csv:summary", request, FRIDAY), cache.key("csv:summary", request, FRIDAY));
+        // Nothing new is stored yet, but Monday's bar is due, so the stale report must not be served
+        assertNotEquals(cache.key("csv:summary", request, FRIDAY), cache.key("csv:summary", request, MONDAY));
+    }
+
+    @Test
+    void newSessionKeepsKeyOfRangeEndingEarlier() throws Exception {
+        ReportCache cache = cache(Map.of("AAPL", FRIDAY));
+        AnalyticsRequest request = new AnalyticsRequest(List.of("AAPL"), 5, 5, 5, 20,
+                LocalDate.of(2026, 9, 1), LocalDate.of(2026, 9, 30));
+
+        assertEquals(cache.key("csv:summary", request, FRIDAY), cache.key("csv:summary", request, MONDAY));
+    }
+
+    @Test
+    void newBarChangesKey() throws Exception {
+        AnalyticsRequest request = new AnalyticsRequest(List.of("AAPL"), 5, 5, 5, 20, null, null);
+
+        assertNotEquals(cache(Map.of("AAPL", FRIDAY)).key("csv:summary", request, MONDAY),
+                cache(Map.of("AAPL", MONDAY)).key("csv:summary", request, MONDAY));
+    }
+
+    private ReportCache cache(Map<String, LocalDate> latestDates) throws Exception {
+        PriceHistoryStore store = mock(PriceHistoryStore.class);
+        when(store.latestDates(any())).thenReturn(latestDates);
+        return new ReportCache(store, new SimpleMeterRegistry(), true, directory.toString(), 1 << 20);
+    }
+}
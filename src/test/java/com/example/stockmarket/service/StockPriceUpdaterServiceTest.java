@@ -0,0 +1,75 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.repository.PortfolioStockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+class StockPriceUpdaterServiceTest {
+    private static final List<String> SYMBOLS = List.of("AAPL", "MSFT", "NVDA", "AMZN", "GOOG", "META", "TSLA", "IBM");
+
+    private final PortfolioStockRepository portfolioStockRepository = mock(PortfolioStockRepository.class);
+    private final LeaseManager leaseManager = mock(LeaseManager.class);
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+    private final List<List<String>> batches = new ArrayList<>();
+
+    @Test
+    void redisOutageLeavesUnfinishedShardsByDefault() {
+        StockPriceUpdaterService service = service(false);
+
+        service.updateStockPrices();
+
+        // Only the shard finished before the outage
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void redisOutageFallbackUpdatesOnlyUnfinishedShards() {
+        StockPriceUpdaterService service = service(true);
+
+        service.updateStockPrices();
+
+        assertEquals(2, batches.size());
+        List<String> updated = new ArrayList<>();
+        batches.forEach(updated::addAll);
+        // Every symbol exactly once: the finished shard is not repeated
+        assertEquals(SYMBOLS.size(), updated.size());
+        assertEquals(SYMBOLS.stream().sorted().toList(), updated.stream().sorted().toList());
+    }
+
+    /** Four shards; Redis fails right after the first one is leased, updated and marked done. */
+    @SuppressWarnings("unchecked")
+    private StockPriceUpdaterService service(boolean localFallback) {
+        when(portfolioStockRepository.findDistinctSymbols()).thenReturn(SYMBOLS);
+        when(stringRedisTemplate.hasKey(anyString())).thenReturn(false);
+        when(stringRedisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+        when(leaseManager.tryAcquire(anyString(), any()))
+                .thenReturn(mock(LeaseManager.Lease.class))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        StockPriceUpdaterService service = spy(new StockPriceUpdaterService(portfolioStockRepository,
+                mock(MarketDataClient.class), mock(RedisTemplate.class), mock(IndicatorStateStore.class),
+                mock(JdbcTemplate.class), mock(PriceStreamService.class), leaseManager, stringRedisTemplate,
+                mock(PortfolioValuationCache.class), mock(ExecutorService.class), 4, 4, 60_000, 60_000, localFallback));
+        doAnswer(invocation -> {
+            List<String> symbols = invocation.getArgument(0);
+            batches.add(List.copyOf(symbols));
+            return symbols.size();
+        }).when(service).updateSymbols(any());
+        return service;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.stockmarket.service;
+
+import com.example.stockmarket.model.PriceSeries;
+import com.example.stockmarket.model.StockData;
+import com.example.stockmarket.util.TradingCalendar;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockServiceImplTest {
+    private static final LocalDate SESSION = LocalDate.of(2026, 10, 14);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final MarketDataClient marketDataClient = mock(MarketDataClient.class);
+    private final PriceHistoryStore priceHistoryStore = mock(PriceHistoryStore.class);
+    private final StockDataCache stockDataCache = mock(StockDataCache.class);
+    private final StockServiceImpl stockService = new StockServiceImpl(executor, marketDataClient, priceHistoryStore,
+            stockDataCache, mock(PriceStreamService.class), new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void upToDateHistoryIsNotRefreshed() {
+        assertFalse(StockServiceImpl.needsRefresh(SESSION, SESSION, null, 0));
+        assertFalse(StockServiceImpl.needsRefresh(SESSION.plusDays(1), SESSION, null, 0));
+    }
+
+    @Test
+    void staleHistoryIsRefreshedUnlessBackingOff() {
+        assertTrue(StockServiceImpl.needsRefresh(null, SESSION, null, 0));
+        assertTrue(StockServiceImpl.needsRefresh(SESSION.minusDays(1), SESSION, null, 0));
+        assertFalse(StockServiceImpl.needsRefresh(SESSION.minusDays(1), SESSION, 1_000L, 999));
+        assertTrue(StockServiceImpl.needsRefresh(SESSION.minusDays(1), SESSION, 1_000L, 1_000));
+    }
+
+    @Test
+    void onlyBarsThroughTheSessionCompleteIt() {
+        assertFalse(StockServiceImpl.reachesSession(PriceSeries.empty(), SESSION));
+        assertFalse(StockServiceImpl.reachesSession(series(SESSION.minusDays(1)), SESSION));
+        assertTrue(StockServiceImpl.reachesSession(series(SESSION), SESSION));
+    }
+
+    @Test
+    void refreshThatFindsNoNewBarBacksOff() {
+        LocalDate stored = TradingCalendar.latestCompletedSession().minusDays(7);
+        when(priceHistoryStore.latestDate("AAPL")).thenReturn(stored);
+        when(priceHistoryStore.loadLatest(eq("AAPL"), anyInt())).thenReturn(series(stored));
+        when(marketDataClient.query(any(), anyString(), anyMap(), any()))
+                .thenReturn(CompletableFuture.completedFuture(new DailySeriesParser.Result(PriceSeries.empty(), null)));
+
+        stockService.fetchStockData("AAPL").join();
+        stockService.fetchStockData("AAPL").join();
+
+        // The second request is served from the store instead of asking upstream again
+        verify(marketDataClient, times(1)).query(any(), anyString(), anyMap(), any());
+    }
+
+    @Test
+    void refreshThatReachesTheSessionIsNotRepeated() {
+        LocalDate session = TradingCalendar.latestCompletedSession();
+        LocalDate stored = session.minusDays(7);
+        when(priceHistoryStore.latestDate("AAPL")).thenReturn(stored, session);
+        when(priceHistoryStore.loadLatest(eq("AAPL"), anyInt())).thenReturn(series(session));
+        when(marketDataClient.query(any(), anyString(), anyMap(), any()))
+                .thenReturn(CompletableFuture.completedFuture(new DailySeriesParser.Result(series(session), null)));
+
+        stockService.fetchStockData("AAPL").join();
+        stockService.fetchStockData("AAPL").join();
+
+        verify(priceHistoryStore).append(eq("AAPL"), any());
+        verify(marketDataClient, times(1)).query(any(), anyString(), anyMap(), any());
+    }
+
+    @Test
+    void storedHistoryServedAfterFailedRefreshIsNotCached() {
+        LocalDate stored = TradingCalendar.latestCompletedSession().minusDays(7);
+        when(priceHistoryStore.latestDate("AAPL")).thenReturn(stored);
+        when(priceHistoryStore.loadLatest(eq("AAPL"), anyInt())).thenReturn(series(stored));
+        when(marketDataClient.query(any(), anyString(), anyMap(), any()))
+                .thenReturn(CompletableFuture.completedFuture(DailySeriesParser.Result.error("API error: upstream down")));
+
+        StockData data = stockService.fetchStockData("AAPL").join();
+
+        assertEquals(stored, data.getClosingPrices().lastDate());
+        verify(stockDataCache, never()).put(anyString(), any());
+    }
+
+    @Test
+    void upToDateHistoryIsCached() {
+        LocalDate session = TradingCalendar.latestCompletedSession();
+        when(priceHistoryStore.latestDate("AAPL")).thenReturn(session);
+        when(priceHistoryStore.loadLatest(eq("AAPL"), anyInt())).thenReturn(series(session));
+
+        stockService.fetchStockData("AAPL").join();
+
+        verify(stockDataCache).put(anyString(), any());
+        verify(marketDataClient, never()).query(any(), anyString(), anyMap(), any());
+    }
+
+    @Test
+    void rejectedFetchFailsAndIsNotJoinedLater() {
+        executor.shutdown();
+
+        CompletableFuture<StockData> first = stockService.fetchStockData("AAPL");
+        CompletableFuture<StockData> second = stockService.fetchStockData("AAPL");
+
+        // Both fail on their own rather than the second waiting on a fetch that never started
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        CompletionException error = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+    }
+
+    private static PriceSeries series(LocalDate last) {
+        return PriceSeries.of(new int[]{(int) last.minusDays(1).toEpochDay(), (int) last.toEpochDay()}, new double[]{100, 101});
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.stockmarket.util;
+
+import com.example.stockmarket.model.AddStockRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvImportUtilTest {
+
+    @Test
+    void columnsAreMatchedInAnyOrderAndCase() throws Exception {
+        List<AddStockRequest> positions = read("""
+                BUYPRICE,Symbol,quantity
+                150.5, AAPL ,10
+
+                ,MSFT,
+                """);
+
+        assertEquals(2, positions.size());
+        assertEquals("AAPL", positions.get(0).getSymbol());
+        assertEquals(10, positions.get(0).getQuantity());
+        assertEquals(150.5, positions.get(0).getBuyPrice());
+        // Empty cells are left for the service to validate or default
+        assertEquals("MSFT", positions.get(1).getSymbol());
+        assertNull(positions.get(1).getQuantity());
+        assertNull(positions.get(1).getBuyPrice());
+    }
+
+    @Test
+    void optionalColumnsMayBeMissing() throws Exception {
+        List<AddStockRequest> positions = read("symbol\nAAPL\n");
+
+        assertEquals(1, positions.size());
+        assertNull(positions.get(0).getQuantity());
+        assertNull(positions.get(0).getBuyPrice());
+    }
+
+    @Test
+    void headerWithoutSymbolIsRejected() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> read("ticker,quantity\nAAPL,10\n"));
+
+        assertEquals("CSV header must include a symbol column", error.getMessage());
+    }
+
+    @Test
+    void malformedNumberNamesItsRow() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> read("symbol,quantity,buyPrice\nAAPL,10,150\nMSFT,ten,300\n"));
+
+        assertTrue(error.getMessage().startsWith("Row 2: "), error.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> read("symbol,buyPrice\nAAPL,1.2.3\n"));
+    }
+
+    private static List<AddStockRequest> read(String csv) throws Exception {
+        return CsvImportUtil.readPositions(new StringReader(csv));
+    }
+}
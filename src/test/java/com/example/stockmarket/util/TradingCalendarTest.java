@@ -0,0 +1,61 @@
+package com.example.stockmarket.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TradingCalendarTest {
+
+    @Test
+    void beforeTheCloseTheLatestSessionIsThePreviousWeekday() {
+        assertEquals(LocalDate.of(2026, 10, 13), TradingCalendar.latestCompletedSession(at(2026, 10, 14, 15, 59)));
+        // Monday morning goes back over the weekend
+        assertEquals(LocalDate.of(2026, 10, 9), TradingCalendar.latestCompletedSession(at(2026, 10, 12, 9, 30)));
+    }
+
+    @Test
+    void atTheCloseTheLatestSessionIsToday() {
+        assertEquals(LocalDate.of(2026, 10, 14), TradingCalendar.latestCompletedSession(at(2026, 10, 14, 16, 0)));
+    }
+
+    @Test
+    void weekendsFallBackToFriday() {
+        assertEquals(LocalDate.of(2026, 10, 9), TradingCalendar.latestCompletedSession(at(2026, 10, 10, 18, 0)));
+        assertEquals(LocalDate.of(2026, 10, 9), TradingCalendar.latestCompletedSession(at(2026, 10, 11, 8, 0)));
+    }
+
+    @Test
+    void nextSessionCloseSkipsTheWeekend() {
+        assertEquals(close(2026, 10, 14), TradingCalendar.nextSessionClose(at(2026, 10, 14, 10, 0)));
+        assertEquals(close(2026, 10, 12), TradingCalendar.nextSessionClose(at(2026, 10, 9, 16, 0)));
+        assertEquals(close(2026, 10, 12), TradingCalendar.nextSessionClose(at(2026, 10, 11, 12, 0)));
+    }
+
+    @Test
+    void previousSessionSkipsTheWeekend() {
+        assertEquals(LocalDate.of(2026, 10, 13), TradingCalendar.previousSession(LocalDate.of(2026, 10, 14)));
+        assertEquals(LocalDate.of(2026, 10, 9), TradingCalendar.previousSession(LocalDate.of(2026, 10, 12)));
+    }
+
+    @Test
+    void clockZoneIsConvertedToMarketTime() {
+        // 21:30 UTC on a Wednesday is 17:30 in New York, after that day's close
+        Clock utc = Clock.fixed(ZonedDateTime.of(2026, 10, 14, 21, 30, 0, 0, ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+        assertEquals(LocalDate.of(2026, 10, 14), TradingCalendar.latestCompletedSession(utc));
+    }
+
+    private static Clock at(int year, int month, int day, int hour, int minute) {
+        ZonedDateTime time = LocalDateTime.of(year, month, day, hour, minute).atZone(TradingCalendar.MARKET_ZONE);
+        return Clock.fixed(time.toInstant(), TradingCalendar.MARKET_ZONE);
+    }
+
+    private static ZonedDateTime close(int year, int month, int day) {
+        return ZonedDateTime.of(LocalDate.of(year, month, day), TradingCalendar.MARKET_CLOSE, TradingCalendar.MARKET_ZONE);
+    }
+}